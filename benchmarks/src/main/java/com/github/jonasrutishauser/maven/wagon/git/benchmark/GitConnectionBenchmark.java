@@ -0,0 +1,223 @@
+package com.github.jonasrutishauser.maven.wagon.git.benchmark;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.jonasrutishauser.maven.wagon.git.GitConfiguration;
+import com.github.jonasrutishauser.maven.wagon.git.GitConnection;
+import com.github.jonasrutishauser.maven.wagon.git.exception.GitException;
+
+/**
+ * Measures the lifecycle of a {@link GitConnection} against a local bare repository. Every operation which changes the
+ * connection runs on a freshly opened connection (setup per invocation), so the operations take milliseconds at least
+ * and the per invocation overhead of JMH does not matter.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class GitConnectionBenchmark {
+
+    private static final int DIRECTORY_FILES = 50;
+
+    private static final Path PUT_PATH = Paths.get("put", "file");
+
+    @State(Scope.Benchmark)
+    public static class Remote {
+
+        @Param({"100", "1000"})
+        public int files;
+
+        @Param({"1", "100"})
+        public int history;
+
+        @Param({"1024", "65536"})
+        public int fileSize;
+
+        /**
+         * URL options of the connection (e.g. <code>bare</code> or <code>depth=1</code>).
+         */
+        @Param({""})
+        public String options;
+
+        private Path directory;
+
+        private RemoteRepository repository;
+
+        private Path file;
+
+        private Path fileDirectory;
+
+        @Setup(Level.Trial)
+        public void create() throws GitAPIException, IOException {
+            directory = Files.createTempDirectory("wagon-git-benchmark-");
+            repository = RemoteRepository.create(directory.resolve("remote.git"), files, history, fileSize);
+            Random random = new Random();
+            file = directory.resolve("file");
+            Files.write(file, RemoteRepository.content(random, fileSize));
+            fileDirectory = Files.createDirectory(directory.resolve("directory"));
+            for (int i = 0; i < DIRECTORY_FILES; i++) {
+                Files.write(fileDirectory.resolve("file" + i), RemoteRepository.content(random, fileSize));
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void delete() throws IOException {
+            Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        }
+
+        GitConnection open() throws GitException {
+            return GitConnection.open(GitConfiguration.parse(repository.url(options)), Optional.empty(),
+                    Optional.empty());
+        }
+
+    }
+
+    /**
+     * Connection opened by the benchmark, closed after every invocation.
+     */
+    @State(Scope.Thread)
+    public static class OpenedConnection {
+
+        private GitConnection connection;
+
+        @TearDown(Level.Invocation)
+        public void close() throws GitException {
+            connection.close();
+        }
+
+    }
+
+    /**
+     * Connection which is opened before and closed after every invocation.
+     */
+    @State(Scope.Thread)
+    public static class Connection {
+
+        private GitConnection connection;
+
+        private Path target;
+
+        @Setup(Level.Invocation)
+        public void open(Remote remote) throws GitException, IOException {
+            connection = remote.open();
+            target = Files.createTempFile("wagon-git-benchmark-", "");
+        }
+
+        @TearDown(Level.Invocation)
+        public void close(Remote remote) throws GitException, IOException {
+            connection.close();
+            remote.repository.reset();
+            Files.deleteIfExists(target);
+        }
+
+    }
+
+    /**
+     * Connection with one put resource, so the invocation only measures the commit and push.
+     */
+    @State(Scope.Thread)
+    public static class ChangedConnection {
+
+        private GitConnection connection;
+
+        @Setup(Level.Invocation)
+        public void open(Remote remote) throws GitException {
+            connection = remote.open();
+            connection.put(remote.file, PUT_PATH);
+        }
+
+        @TearDown(Level.Invocation)
+        public void reset(Remote remote) throws IOException {
+            remote.repository.reset();
+        }
+
+    }
+
+    /**
+     * Measures opening a connection: cloning (or fetching) the branch and checking it out.
+     */
+    @Benchmark
+    public GitConnection open(Remote remote, OpenedConnection opened) throws GitException {
+        opened.connection = remote.open();
+        return opened.connection;
+    }
+
+    @Benchmark
+    public boolean getIfNewer(Remote remote, Connection connection) throws GitException {
+        return connection.connection.getIfNewer(Paths.get(RemoteRepository.path(remote.files / 2)),
+                connection.target, 0);
+    }
+
+    @Benchmark
+    public void put(Remote remote, Connection connection) throws GitException {
+        connection.connection.put(remote.file, PUT_PATH);
+    }
+
+    @Benchmark
+    public void putDirectory(Remote remote, Connection connection) throws GitException {
+        connection.connection.put(remote.fileDirectory, PUT_PATH);
+    }
+
+    /**
+     * Measures committing and pushing a single put resource.
+     */
+    @Benchmark
+    public void close(ChangedConnection connection) throws GitException {
+        connection.connection.close();
+    }
+
+}
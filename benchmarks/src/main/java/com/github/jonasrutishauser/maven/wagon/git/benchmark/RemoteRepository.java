@@ -0,0 +1,137 @@
+package com.github.jonasrutishauser.maven.wagon.git.benchmark;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Random;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEditor.PathEdit;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+
+/**
+ * Local bare repository with a generated history, used as remote of the benchmarked connections.
+ */
+class RemoteRepository {
+
+    static final String BRANCH = "master";
+
+    private static final int FILES_PER_DIRECTORY = 100;
+
+    private final Path directory;
+
+    private ObjectId head;
+
+    private RemoteRepository(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Creates a repository with the given number of random files. The first commit adds all files, every further
+     * commit (up to the history depth) changes one of them.
+     */
+    static RemoteRepository create(Path directory, int files, int history, int fileSize)
+            throws GitAPIException, IOException {
+        RemoteRepository remote = new RemoteRepository(directory);
+        Random random = new Random(files);
+        PersonIdent person = new PersonIdent("benchmark", "benchmark@example.org");
+        try (Git git = Git.init().setBare(true).setDirectory(directory.toFile()).call();
+                ObjectInserter inserter = git.getRepository().newObjectInserter()) {
+            DirCache index = DirCache.newInCore();
+            DirCacheEditor editor = index.editor();
+            for (int file = 0; file < files; file++) {
+                editor.add(blobEdit(path(file), inserter.insert(Constants.OBJ_BLOB, content(random, fileSize))));
+            }
+            editor.finish();
+            for (int commit = 0; commit < history; commit++) {
+                if (commit > 0) {
+                    editor = index.editor();
+                    editor.add(blobEdit(path(commit % files), inserter.insert(Constants.OBJ_BLOB,
+                            content(random, fileSize))));
+                    editor.finish();
+                }
+                CommitBuilder commitBuilder = new CommitBuilder();
+                commitBuilder.setAuthor(person);
+                commitBuilder.setCommitter(person);
+                commitBuilder.setMessage("commit " + commit);
+                commitBuilder.setTreeId(index.writeTree(inserter));
+                if (remote.head != null) {
+                    commitBuilder.setParentId(remote.head);
+                }
+                remote.head = inserter.insert(commitBuilder);
+            }
+            inserter.flush();
+            remote.reset();
+        }
+        return remote;
+    }
+
+    static String path(int file) {
+        return "dir" + (file / FILES_PER_DIRECTORY) + "/file" + file;
+    }
+
+    String url(String options) {
+        return "git:" + directory.toUri() + '!' + BRANCH + '!' + (options.isEmpty() ? "" : '?' + options);
+    }
+
+    /**
+     * Moves the branch back to the generated history (removes the commits pushed by a benchmark).
+     */
+    void reset() throws IOException {
+        try (Git git = Git.open(directory.toFile())) {
+            Repository repository = git.getRepository();
+            RefUpdate refUpdate = repository.updateRef(Constants.R_HEADS + BRANCH);
+            refUpdate.setNewObjectId(head);
+            RefUpdate.Result result = refUpdate.forceUpdate();
+            if (result != RefUpdate.Result.NEW && result != RefUpdate.Result.FORCED
+                    && result != RefUpdate.Result.NO_CHANGE) {
+                throw new IOException("failed to reset " + refUpdate.getName() + ": " + result);
+            }
+        }
+    }
+
+    static byte[] content(Random random, int size) {
+        byte[] content = new byte[size];
+        random.nextBytes(content);
+        return content;
+    }
+
+    private static PathEdit blobEdit(String path, ObjectId blobId) {
+        return new PathEdit(path) {
+
+            @Override
+            public void apply(DirCacheEntry entry) {
+                entry.setFileMode(FileMode.REGULAR_FILE);
+                entry.setObjectId(blobId);
+            }
+        };
+    }
+
+}
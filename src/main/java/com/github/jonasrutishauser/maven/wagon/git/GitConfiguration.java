@@ -21,17 +21,54 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import com.github.jonasrutishauser.maven.wagon.git.util.FileTransfer;
+
 public class GitConfiguration {
 
     /**
-     * URL format: git:(//[identifier]/)?[url]((![branch])?!/?[path])?
+     * URL format: git:(//[identifier]/)?[url]((![branch])?!/?[path]?(\?[options])?)?
+     * <p>
+     * options format: [key](=[value])?(&amp;[key](=[value])?)*
      */
-    private static final Pattern URL_PATTERN = Pattern
-            .compile("git:(//[^/]+/)?(?<url>[^!]+)((!(?<branch>[^!]+))?!/?(?<path>[^!]+)?)?");
+    private static final Pattern URL_PATTERN = Pattern.compile(
+            "git:(//[^/]+/)?(?<url>[^!]+)((!(?<branch>[^!]+))?!/?(?<path>[^!?]+)?(\\?(?<options>[^!?]*))?)?");
+
+    private static final String CACHE_OPTION = "cache";
+
+    private static final String DEPTH_OPTION = "depth";
+
+    private static final String SPARSE_OPTION = "sparse";
+
+    private static final String BARE_OPTION = "bare";
+
+    private static final String PARTIAL_OPTION = "partial";
+
+    private static final String BATCH_OPTION = "batch";
+
+    private static final String PARALLELISM_OPTION = "parallelism";
+
+    private static final String TRANSFER_OPTION = "transfer";
+
+    private static final String POOL_OPTION = "pool";
+
+    private static final String PREFETCH_OPTION = "prefetch";
+
+    private static final String RETRIES_OPTION = "retries";
+
+    static final String POST_BUFFER_OPTION = "postBuffer";
+
+    static final String TIMEOUT_OPTION = "timeout";
 
     private final String url;
 
@@ -39,12 +76,15 @@ public class GitConfiguration {
 
     private final Optional<Path> path;
 
+    private final Map<String, String> options;
+
     private Path workingDirectory;
 
-    private GitConfiguration(String url, Optional<String> branch, Optional<Path> path) {
+    private GitConfiguration(String url, Optional<String> branch, Optional<Path> path, Map<String, String> options) {
         this.url = url;
         this.branch = branch;
         this.path = path;
+        this.options = options;
     }
 
     public static GitConfiguration parse(String url) {
@@ -53,7 +93,52 @@ public class GitConfiguration {
             throw new IllegalArgumentException("URL not valid");
         }
         return new GitConfiguration(matcher.group("url"), Optional.ofNullable(matcher.group("branch")),
-                Optional.ofNullable(matcher.group("path")).map(Paths::get));
+                Optional.ofNullable(matcher.group("path")).map(Paths::get), parseOptions(matcher.group("options")));
+    }
+
+    /**
+     * @param defaults
+     *            options used where the URL does not set them (e.g. from the server configuration)
+     * @return the configuration with the given defaults
+     */
+    public GitConfiguration withDefaults(Map<String, String> defaults) {
+        if (defaults.isEmpty()) {
+            return this;
+        }
+        Map<String, String> merged = new LinkedHashMap<>(defaults);
+        merged.putAll(options);
+        return new GitConfiguration(url, branch, path, Collections.unmodifiableMap(merged));
+    }
+
+    private OptionalInt getIntOption(String name, int defaultValue) {
+        String value = options.get(name);
+        if (value == null || Boolean.FALSE.toString().equals(value)) {
+            return OptionalInt.empty();
+        }
+        if (Boolean.TRUE.toString().equals(value)) {
+            return OptionalInt.of(defaultValue);
+        }
+        try {
+            return OptionalInt.of(Integer.parseInt(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " is not a number: " + value, e);
+        }
+    }
+
+    private static Map<String, String> parseOptions(String options) {
+        if (options == null || options.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> result = new LinkedHashMap<>();
+        for (String option : options.split("&")) {
+            int separator = option.indexOf('=');
+            if (separator < 0) {
+                result.put(option, Boolean.TRUE.toString());
+            } else {
+                result.put(option.substring(0, separator), option.substring(separator + 1));
+            }
+        }
+        return Collections.unmodifiableMap(result);
     }
 
     public String getUrl() {
@@ -68,6 +153,127 @@ public class GitConfiguration {
         return path;
     }
 
+    public Map<String, String> getOptions() {
+        return options;
+    }
+
+    /**
+     * The directory of the persistent local mirrors (option <code>cache</code>). Without a value (or with
+     * <code>true</code>) <code>~/.m2/wagon-git</code> is used.
+     */
+    public Optional<Path> getCacheDirectory() {
+        String cache = options.get(CACHE_OPTION);
+        if (cache == null || Boolean.FALSE.toString().equals(cache)) {
+            return Optional.empty();
+        }
+        if (Boolean.TRUE.toString().equals(cache)) {
+            return Optional.of(Paths.get(System.getProperty("user.home"), ".m2", "wagon-git"));
+        }
+        return Optional.of(Paths.get(cache));
+    }
+
+    /**
+     * The number of commits to fetch (option <code>depth</code>). Without a value only the tip commit is fetched.
+     */
+    public OptionalInt getDepth() {
+        return getIntOption(DEPTH_OPTION, 1);
+    }
+
+    /**
+     * Whether only the files below the path are checked out (option <code>sparse</code>).
+     */
+    public boolean isSparse() {
+        return Boolean.parseBoolean(options.get(SPARSE_OPTION));
+    }
+
+    /**
+     * Whether resources are read directly from the object database instead of a checked out work tree (option
+     * <code>bare</code>).
+     */
+    public boolean isBare() {
+        return Boolean.parseBoolean(options.get(BARE_OPTION));
+    }
+
+    /**
+     * Whether only the commits and trees are fetched and the blobs are fetched when a resource is read (option
+     * <code>partial</code>). A partial clone has no work tree, like <code>bare</code>.
+     */
+    public boolean isPartial() {
+        return Boolean.parseBoolean(options.get(PARTIAL_OPTION));
+    }
+
+    /**
+     * The number of put resources after which they are staged (option <code>batch</code>). Without this option all
+     * resources are staged at once when the connection is closed.
+     */
+    public OptionalInt getBatchSize() {
+        return getIntOption(BATCH_OPTION, 1);
+    }
+
+    /**
+     * The number of files copied concurrently for directories (option <code>parallelism</code>).
+     */
+    public OptionalInt getParallelism() {
+        return getIntOption(PARALLELISM_OPTION, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * The cheapest strategy used to transfer files between the work tree and the local file system (option
+     * <code>transfer</code> with one of the values <code>link</code>, <code>channel</code> or <code>copy</code>; the
+     * connection uses <code>channel</code> if it is not set).
+     */
+    public Optional<FileTransfer> getTransfer() {
+        String transfer = options.get(TRANSFER_OPTION);
+        if (transfer == null) {
+            return Optional.empty();
+        }
+        try {
+            return Optional.of(FileTransfer.valueOf(transfer.toUpperCase(Locale.ROOT)));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(TRANSFER_OPTION + " is not one of "
+                    + Arrays.toString(FileTransfer.values()).toLowerCase(Locale.ROOT) + ": " + transfer, e);
+        }
+    }
+
+    /**
+     * Whether the connection is shared with all other wagons of this JVM using the same configuration (option
+     * <code>pool</code>).
+     */
+    public boolean isPooled() {
+        return Boolean.parseBoolean(options.get(POOL_OPTION));
+    }
+
+    /**
+     * Whether the branch is fetched in the background, so opening the connection does not block until the first
+     * operation (option <code>prefetch</code>).
+     */
+    public boolean isPrefetch() {
+        return Boolean.parseBoolean(options.get(PREFETCH_OPTION));
+    }
+
+    /**
+     * How many times a push rejected because of a concurrent update of the branch is replayed on the new branch and
+     * retried (option <code>retries</code>).
+     */
+    public OptionalInt getPushRetries() {
+        return getIntOption(RETRIES_OPTION, 3);
+    }
+
+    /**
+     * Size in bytes up to which an HTTP push is buffered and sent at once; larger pushes are streamed in chunks (option
+     * <code>postBuffer</code>, default of JGit: 1 MiB).
+     */
+    public OptionalInt getPostBuffer() {
+        return getIntOption(POST_BUFFER_OPTION, 1024 * 1024);
+    }
+
+    /**
+     * Timeout in seconds for connecting to the remote and for every read from it (option <code>timeout</code>).
+     */
+    public OptionalInt getTimeout() {
+        return getIntOption(TIMEOUT_OPTION, 60);
+    }
+
     public Path getWorkingDirectory() throws IOException {
         if (workingDirectory == null) {
             workingDirectory = Files.createTempDirectory("wagon-git-");
@@ -75,4 +281,22 @@ public class GitConfiguration {
         return workingDirectory;
     }
 
+    @Override
+    public int hashCode() {
+        return Objects.hash(url, branch, path, options);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof GitConfiguration)) {
+            return false;
+        }
+        GitConfiguration other = (GitConfiguration) obj;
+        return url.equals(other.url) && branch.equals(other.branch) && path.equals(other.path)
+                && options.equals(other.options);
+    }
+
 }
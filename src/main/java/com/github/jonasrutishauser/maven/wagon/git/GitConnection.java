@@ -18,38 +18,93 @@ package com.github.jonasrutishauser.maven.wagon.git;
  */
 
 import static org.eclipse.jgit.transport.RemoteRefUpdate.Status.OK;
+import static org.eclipse.jgit.transport.RemoteRefUpdate.Status.REJECTED_NONFASTFORWARD;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URISyntaxException;
-import java.nio.file.CopyOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileVisitResult;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 
+import org.eclipse.jgit.api.CheckoutCommand;
 import org.eclipse.jgit.api.FetchCommand;
 import org.eclipse.jgit.api.Git;
-import org.eclipse.jgit.api.LogCommand;
 import org.eclipse.jgit.api.PushCommand;
 import org.eclipse.jgit.api.RemoteAddCommand;
+import org.eclipse.jgit.api.TransportConfigCallback;
 import org.eclipse.jgit.api.errors.GitAPIException;
 import org.eclipse.jgit.api.errors.TransportException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheCheckout;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEditor.PathEdit;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.errors.PackProtocolException;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ConfigConstants;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectLoader;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.PersonIdent;
 import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.merge.MergeStrategy;
+import org.eclipse.jgit.merge.ResolveMerger;
 import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
 import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FilterSpec;
+import org.eclipse.jgit.transport.HttpConfig;
 import org.eclipse.jgit.transport.PushResult;
 import org.eclipse.jgit.transport.RefSpec;
 import org.eclipse.jgit.transport.RemoteConfig;
 import org.eclipse.jgit.transport.RemoteRefUpdate;
 import org.eclipse.jgit.transport.URIish;
 import org.eclipse.jgit.transport.UsernamePasswordCredentialsProvider;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.PathFilterGroup;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.TemporaryBuffer;
+import org.eclipse.jgit.util.io.TeeInputStream;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -58,57 +113,342 @@ import com.github.jonasrutishauser.maven.wagon.git.exception.GitCloneException;
 import com.github.jonasrutishauser.maven.wagon.git.exception.GitException;
 import com.github.jonasrutishauser.maven.wagon.git.exception.GitPushException;
 import com.github.jonasrutishauser.maven.wagon.git.exception.NoSuchResourceInGitException;
+import com.github.jonasrutishauser.maven.wagon.git.metrics.Measurement;
+import com.github.jonasrutishauser.maven.wagon.git.metrics.Metrics;
+import com.github.jonasrutishauser.maven.wagon.git.metrics.Phase;
+import com.github.jonasrutishauser.maven.wagon.git.util.BackgroundDeleter;
+import com.github.jonasrutishauser.maven.wagon.git.util.CommitTimeIndex;
+import com.github.jonasrutishauser.maven.wagon.git.util.FileTransfer;
 import com.github.jonasrutishauser.maven.wagon.git.util.LoggerProgressMonitor;
+import com.github.jonasrutishauser.maven.wagon.git.util.MetadataTreeMerger;
+import com.github.jonasrutishauser.maven.wagon.git.util.ParallelProcessor;
+import com.github.jonasrutishauser.maven.wagon.git.util.SshSessionCache;
+import com.github.jonasrutishauser.maven.wagon.git.util.TransportConfig;
 
 public class GitConnection implements AutoCloseable {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(GitConnection.class);
 
+    private static final String COMMIT_MESSAGE = "[wagon-git] adding files to repository";
+
+    private static final int DEFAULT_PUSH_RETRIES = 3;
+
+    private static final long RETRY_BASE_DELAY_MILLIS = 100;
+
+    private static final int PACK_HEADER_LENGTH = 12;
+
+    /**
+     * Filter of a partial clone: only commits and trees are fetched, the blobs are fetched when they are read.
+     */
+    static final TransportConfigCallback OMIT_BLOBS = transport -> {
+        try {
+            transport.setFilterSpec(FilterSpec.fromFilterLine("blob:none"));
+        } catch (PackProtocolException e) {
+            throw new IllegalStateException(e);
+        }
+    };
+
+    private static final ExecutorService PREFETCH_EXECUTOR = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "wagon-git-prefetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final Git git;
 
     private final CredentialsProvider credentialsProvider;
 
     private final Path workingDirectory;
 
-    private GitConnection(Git git, CredentialsProvider credentialsProvider, Path pathInWorkingDirectory) {
+    private final boolean bare;
+
+    private final boolean partial;
+
+    private final Optional<LocalMirror> mirror;
+
+    /**
+     * Path below which the work tree is checked out (if in sparse mode).
+     */
+    private final Optional<String> sparsePath;
+
+    private final int batchSize;
+
+    private final ParallelProcessor processor;
+
+    private final FileTransfer transfer;
+
+    private final int pushRetries;
+
+    private final Metrics metrics;
+
+    private final TransportConfig transportConfig;
+
+    /**
+     * Completed when the branch is fetched and checked out.
+     */
+    private final CompletableFuture<Void> ready;
+
+    /**
+     * Index entries of the files written to the work tree, but not yet staged.
+     */
+    private final Map<String, DirCacheEntry> unstagedEntries = new LinkedHashMap<>();
+
+    /**
+     * Blobs written to the work tree since the last commit (by path), to decide whether there is anything to commit
+     * without scanning the work tree.
+     */
+    private final Map<String, ObjectId> writtenBlobs = new LinkedHashMap<>();
+
+    /**
+     * Index of the last checkout or commit, read on the first put after it.
+     */
+    private DirCache committedIndex;
+
+    /**
+     * In-memory index of the bare mode, created on the first put.
+     */
+    private DirCache index;
+
+    /**
+     * Whether a resource was put since the last successful flush.
+     */
+    private boolean unflushed;
+
+    private CommitTimeIndex commitTimeIndex;
+
+    private GitConnection(Git git, CredentialsProvider credentialsProvider, Path pathInWorkingDirectory,
+            boolean bare, boolean partial, Optional<LocalMirror> mirror, Optional<String> sparsePath, int batchSize,
+            int parallelism, FileTransfer transfer, int pushRetries, Metrics metrics, TransportConfig transportConfig,
+            CompletableFuture<Void> ready) {
         this.git = git;
         this.credentialsProvider = credentialsProvider;
         this.workingDirectory = git.getRepository().getWorkTree().toPath().resolve(pathInWorkingDirectory);
+        this.bare = bare;
+        this.partial = partial;
+        this.mirror = mirror;
+        this.sparsePath = sparsePath;
+        this.batchSize = batchSize;
+        this.processor = new ParallelProcessor(parallelism);
+        this.transfer = transfer;
+        this.pushRetries = pushRetries;
+        this.metrics = metrics;
+        this.transportConfig = transportConfig;
+        this.ready = ready;
     }
 
     public static GitConnection open(GitConfiguration configuration, Optional<String> username,
             Optional<String> password) throws GitCloneException, GitAuthenticationException {
-        String branch = configuration.getBranch().orElse(Constants.MASTER);
         CredentialsProvider credentialsProvider = null;
         if (username.isPresent()) {
             credentialsProvider = new UsernamePasswordCredentialsProvider(username.get(),
                     password.map(String::toCharArray).orElse(null));
         }
+        Optional<String> sparsePath = configuration.isSparse()
+                ? configuration.getPath().map(GitConnection::toRepoPath)
+                : Optional.empty();
+        Metrics metrics = Metrics.of(configuration.getUrl());
+        Optional<LocalMirror> mirror = configuration.getCacheDirectory()
+                .map(cacheDirectory -> LocalMirror.of(cacheDirectory, configuration.getUrl(),
+                        configuration.isPartial(), configuration.getDepth().isPresent()));
+        TransportConfig transportConfig = new TransportConfig(new SshSessionCache(), username, password,
+                configuration.getTimeout());
         File workingDirectory = null;
         Git git;
+        RemoteConfig remoteConfig;
+        CompletableFuture<Void> ready;
         try {
             workingDirectory = configuration.getWorkingDirectory().toFile();
             git = Git.init().setDirectory(workingDirectory).call();
-            RemoteConfig remoteConfig = setRemote(configuration.getUrl(), git);
-            if (remoteHasBranch(git, branch)) {
-                fetchAndCheckoutBranch(git, branch, remoteConfig, credentialsProvider);
-            } else if (configuration.getBranch().isPresent()) {
-                git.checkout().setName(branch).setOrphan(true).call();
+            remoteConfig = setRemote(configuration.getUrl(), git);
+            if (configuration.getPostBuffer().isPresent()) {
+                setPostBuffer(git, configuration.getPostBuffer().getAsInt());
+            }
+            if (configuration.isPrefetch()) {
+                ready = fetchInBackground(git, configuration, remoteConfig, credentialsProvider, sparsePath, mirror,
+                        transportConfig, metrics);
+            } else {
+                fetch(git, configuration, remoteConfig, credentialsProvider, sparsePath, mirror, transportConfig,
+                        metrics);
+                ready = CompletableFuture.completedFuture(null);
             }
         } catch (GitAPIException | IOException | URISyntaxException e) {
+            transportConfig.close();
             if (workingDirectory != null) {
-                deleteWorkTree(workingDirectory);
+                deleteWorkTree(workingDirectory, metrics);
+            }
+            throw cloneFailed(configuration.getUrl(), e);
+        }
+        return new GitConnection(git, credentialsProvider, configuration.getPath().orElse(Paths.get("")),
+                !hasWorkTree(configuration), configuration.isPartial(), mirror, sparsePath,
+                configuration.getBatchSize().orElse(Integer.MAX_VALUE),
+                configuration.getParallelism().orElse(Runtime.getRuntime().availableProcessors()),
+                configuration.getTransfer().orElse(FileTransfer.CHANNEL),
+                configuration.getPushRetries().orElse(DEFAULT_PUSH_RETRIES), metrics, transportConfig, ready);
+    }
+
+    private static void fetch(Git git, GitConfiguration configuration, RemoteConfig remoteConfig,
+            CredentialsProvider credentialsProvider, Optional<String> sparsePath, Optional<LocalMirror> mirror,
+            TransportConfig transportConfig, Metrics metrics) throws GitAPIException, IOException {
+        TransportConfigCallback fetchConfig = fetchConfig(transportConfig, configuration.isPartial());
+        String branch = configuration.getBranch().orElse(Constants.MASTER);
+        Optional<String> startPoint;
+        try (Measurement measurement = metrics.start(Phase.FETCH)) {
+            if (mirror.isPresent()) {
+                startPoint = updateMirrorAndFetchBranch(git, branch, configuration.getDepth(), fetchConfig,
+                        remoteConfig, credentialsProvider, mirror.get(), measurement);
+            } else {
+                startPoint = fetchBranch(git, branch, configuration.getDepth(), fetchConfig, remoteConfig,
+                        credentialsProvider, measurement);
+            }
+        }
+        if (startPoint.isPresent()) {
+            createBranch(git, branch, startPoint.get());
+            if (hasWorkTree(configuration)) {
+                try (Measurement measurement = metrics.start(Phase.CHECKOUT)) {
+                    checkoutHead(git, sparsePath);
+                }
+            }
+        } else if (configuration.getBranch().isPresent()) {
+            git.checkout().setName(branch).setOrphan(true).call();
+        }
+    }
+
+    /**
+     * Runs the fetch and checkout on a background thread, so they overlap with the work of the caller until the first
+     * operation which needs them.
+     */
+    private static CompletableFuture<Void> fetchInBackground(Git git, GitConfiguration configuration,
+            RemoteConfig remoteConfig, CredentialsProvider credentialsProvider, Optional<String> sparsePath,
+            Optional<LocalMirror> mirror, TransportConfig transportConfig, Metrics metrics) {
+        CompletableFuture<Void> ready = new CompletableFuture<>();
+        PREFETCH_EXECUTOR.execute(() -> {
+            try {
+                fetch(git, configuration, remoteConfig, credentialsProvider, sparsePath, mirror, transportConfig,
+                        metrics);
+                ready.complete(null);
+            } catch (GitAPIException | IOException | RuntimeException e) {
+                ready.completeExceptionally(e);
+            } catch (Error e) {
+                // the operations waiting for the fetch must not block forever
+                ready.completeExceptionally(e);
+                throw e;
+            }
+        });
+        return ready;
+    }
+
+    /**
+     * @return the configuration of the transports which fetch the branch (a partial clone omits the blobs)
+     */
+    private static TransportConfigCallback fetchConfig(TransportConfig transportConfig, boolean partial) {
+        if (!partial) {
+            return transportConfig;
+        }
+        return transport -> {
+            transportConfig.configure(transport);
+            OMIT_BLOBS.configure(transport);
+        };
+    }
+
+    /**
+     * @return <code>false</code> if resources are read from the object database (options <code>bare</code> and
+     *         <code>partial</code>)
+     */
+    private static boolean hasWorkTree(GitConfiguration configuration) {
+        return !configuration.isBare() && !configuration.isPartial();
+    }
+
+    private static GitCloneException cloneFailed(String url, Throwable e) throws GitAuthenticationException {
+        if (e instanceof TransportException && isAuthenticationFailureMessage(e.getMessage())) {
+            throw new GitAuthenticationException("invalid credentials for repository: " + url, e);
+        }
+        return new GitCloneException("failed to clone from remote repository: " + e.getMessage(), e);
+    }
+
+    /**
+     * Waits until the (background) fetch and checkout are done.
+     */
+    private void awaitReady() throws GitCloneException, GitAuthenticationException {
+        try {
+            ready.join();
+        } catch (CompletionException e) {
+            throw cloneFailed(git.getRepository().getConfig().getString(ConfigConstants.CONFIG_REMOTE_SECTION,
+                    Constants.DEFAULT_REMOTE_NAME, ConfigConstants.CONFIG_KEY_URL), e.getCause());
+        }
+    }
+
+    /**
+     * Waits for the (background) fetch if it links the local mirror: the object database reads the alternates once,
+     * so inserting an object before they are written would hide the objects of the mirror.
+     */
+    private void awaitMirrorLinked() throws GitCloneException, GitAuthenticationException {
+        if (mirror.isPresent()) {
+            awaitReady();
+        }
+    }
+
+    /**
+     * Waits until the (background) fetch and checkout are done.
+     *
+     * @return <code>false</code> if they failed
+     */
+    private boolean awaitOpened() {
+        try {
+            ready.join();
+            return true;
+        } catch (CompletionException e) {
+            return false;
+        }
+    }
+
+    public synchronized boolean getIfNewer(Path resource, Path destination, long timestamp) throws GitException {
+        return getIfNewer(resource, new Destination() {
+
+            @Override
+            public long copyFrom(Path file) throws IOException {
+                return copy(file, destination, transfer, true);
             }
-            if (e instanceof TransportException && isAuthenticationFailureMessage(e.getMessage())) {
-                throw new GitAuthenticationException("invalid credentials for repository: " + configuration.getUrl(),
-                        e);
+
+            @Override
+            public long copyFrom(ObjectReader reader, ObjectId objectId) throws IOException {
+                return copy(reader, objectId, destination);
             }
-            throw new GitCloneException("failed to clone from remote repository: " + e.getMessage(), e);
+        }, timestamp);
+    }
+
+    /**
+     * Streams the resource (which must be a file) to the destination.
+     */
+    public synchronized boolean getIfNewer(Path resource, OutputStream destination, long timestamp)
+            throws GitException {
+        return getIfNewer(resource, new Destination() {
+
+            @Override
+            public long copyFrom(Path file) throws IOException {
+                return Files.copy(file, destination);
+            }
+
+            @Override
+            public long copyFrom(ObjectReader reader, ObjectId objectId) throws IOException {
+                ObjectLoader loader = reader.open(objectId, Constants.OBJ_BLOB);
+                loader.copyTo(destination);
+                return loader.getSize();
+            }
+        }, timestamp);
+    }
+
+    private boolean getIfNewer(Path resource, Destination destination, long timestamp) throws GitException {
+        awaitReady();
+        try (Measurement measurement = metrics.start(Phase.GET)) {
+            if (bare) {
+                return getIfNewerFromRepository(resource, destination, timestamp, measurement);
+            }
+            return getIfNewerFromWorkTree(resource, destination, timestamp, measurement);
         }
-        return new GitConnection(git, credentialsProvider, configuration.getPath().orElse(Paths.get("")));
     }
 
-    public boolean getIfNewer(Path resource, Path destination, long timestamp) throws GitException {
+    private boolean getIfNewerFromWorkTree(Path resource, Destination destination, long timestamp,
+            Measurement measurement) throws GitException {
         Path realResource = workingDirectory.resolve(resource);
         if (!realResource.toFile().exists()) {
             throw new NoSuchResourceInGitException("resource '" + realResource + "' does not exist");
@@ -117,53 +457,535 @@ public class GitConnection implements AutoCloseable {
             return false;
         }
         try {
-            copy(realResource, destination, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+            measurement.add(destination.copyFrom(realResource), 1);
         } catch (IOException e) {
             throw new GitException("failed to read resource: " + e.getMessage(), e);
         }
         return true;
     }
 
-    public void put(Path source, Path destination) throws GitException {
+    public synchronized void put(Path source, Path destination) throws GitException {
+        unflushed = true;
         Path realDestination = workingDirectory.resolve(destination).normalize();
-        try {
-            if (!workingDirectory.toFile().isDirectory()) {
-                Files.createDirectories(workingDirectory);
+        try (Measurement measurement = metrics.start(Phase.PUT)) {
+            if (bare) {
+                putIntoIndex(source, getRepoPath(realDestination), measurement);
+                return;
+            }
+            awaitReady();
+            DirCache committed = getCommittedIndex();
+            createParentDirectories(realDestination);
+            if (source.toFile().isDirectory()) {
+                List<Path> files = listFiles(source);
+                for (Path file : files) {
+                    createParentDirectories(realDestination.resolve(source.relativize(file)));
+                }
+                added(processor.process(files, file -> {
+                    Path target = realDestination.resolve(source.relativize(file));
+                    return hasContent(target, file, committed) ? null : writeAndInsert(file, target);
+                }), measurement);
+            } else if (!hasContent(realDestination, source, committed)) {
+                added(Collections.singletonList(writeAndInsert(source, realDestination)), measurement);
             }
-            copy(source, realDestination, StandardCopyOption.REPLACE_EXISTING);
         } catch (IOException e) {
             throw new GitException("failed to write resource: " + e.getMessage(), e);
         }
-        try {
-            git.add().addFilepattern(getRepoPath(realDestination)).call();
-        } catch (GitAPIException e) {
+    }
+
+    /**
+     * Writes the content of the stream to the destination file.
+     *
+     * @param length
+     *            the number of bytes in the stream (negative if unknown)
+     */
+    public synchronized void put(InputStream source, long length, Path destination) throws GitException {
+        unflushed = true;
+        Path realDestination = workingDirectory.resolve(destination).normalize();
+        try (Measurement measurement = metrics.start(Phase.PUT)) {
+            if (bare) {
+                putStreamIntoIndex(source, length, getRepoPath(realDestination), measurement);
+                return;
+            }
+            awaitReady();
+            createParentDirectories(realDestination);
+            if (length < 0) {
+                // replaces the file instead of writing into it, as it may be a hard link
+                Files.copy(source, realDestination, StandardCopyOption.REPLACE_EXISTING);
+                try (InputStream in = Files.newInputStream(realDestination)) {
+                    added(Collections.singletonList(insert(in, Files.size(realDestination), realDestination, null)),
+                            measurement);
+                }
+            } else {
+                added(Collections.singletonList(writeAndInsert(source, length, realDestination)), measurement);
+            }
+        } catch (IOException e) {
             throw new GitException("failed to write resource: " + e.getMessage(), e);
         }
     }
 
+    private DirCache getCommittedIndex() throws IOException {
+        if (committedIndex == null) {
+            committedIndex = git.getRepository().readDirCache();
+        }
+        return committedIndex;
+    }
+
+    /**
+     * Checks whether the target already has the content of the source (from a previous put or the branch tip), so
+     * redeploying an identical file neither rewrites nor stages it. The source is only hashed if the file in the
+     * work tree has the same length.
+     */
+    private boolean hasContent(Path target, Path source, DirCache committed) throws IOException {
+        String repoPath = getRepoPath(target);
+        ObjectId current = writtenBlobs.get(repoPath);
+        if (current == null) {
+            DirCacheEntry entry = committed.getEntry(repoPath);
+            if (entry == null || entry.getFileMode() != FileMode.REGULAR_FILE) {
+                return false;
+            }
+            current = entry.getObjectId();
+        }
+        long length = Files.size(source);
+        if (!target.toFile().isFile() || Files.size(target) != length) {
+            return false;
+        }
+        try (ObjectInserter.Formatter formatter = new ObjectInserter.Formatter();
+                InputStream in = Files.newInputStream(source)) {
+            return current.equals(formatter.idFor(Constants.OBJ_BLOB, length, in));
+        }
+    }
+
+    /**
+     * Writes the source to the work tree and inserts it into the object database in a single pass over the source.
+     * The returned index entry carries the stat data of the written file, so staging it does not hash the file
+     * again.
+     */
+    private DirCacheEntry writeAndInsert(Path source, Path target) throws IOException {
+        try (InputStream in = Files.newInputStream(source)) {
+            return writeAndInsert(in, Files.size(source), target);
+        }
+    }
+
+    private DirCacheEntry writeAndInsert(InputStream source, long length, Path target) throws IOException {
+        // replaces the file instead of writing into it, as it may be a hard link
+        Files.deleteIfExists(target);
+        try (OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE_NEW)) {
+            return insert(source, length, target, out);
+        }
+    }
+
+    /**
+     * @param copy
+     *            receives everything read from the source (<code>null</code> if the target is already written)
+     */
+    private DirCacheEntry insert(InputStream source, long length, Path target, OutputStream copy) throws IOException {
+        ObjectId blobId;
+        try (ObjectInserter inserter = git.getRepository().newObjectInserter()) {
+            blobId = inserter.insert(Constants.OBJ_BLOB, length,
+                    copy == null ? source : new TeeInputStream(source, copy));
+            inserter.flush();
+        }
+        if (copy != null) {
+            copy.close();
+        }
+        DirCacheEntry entry = new DirCacheEntry(getRepoPath(target));
+        entry.setFileMode(FileMode.REGULAR_FILE);
+        entry.setObjectId(blobId);
+        entry.setLength(length);
+        entry.setLastModified(Files.getLastModifiedTime(target).toInstant());
+        return entry;
+    }
+
+    private static void createParentDirectories(Path file) throws IOException {
+        Path parent = file.getParent();
+        if (!parent.toFile().isDirectory()) {
+            Files.createDirectories(parent);
+        }
+    }
+
+    /**
+     * @param entries
+     *            the written entries (<code>null</code> for a file which already had the content)
+     */
+    private void added(List<DirCacheEntry> entries, Measurement measurement) throws IOException {
+        for (DirCacheEntry entry : entries) {
+            if (entry == null) {
+                continue;
+            }
+            unstagedEntries.put(entry.getPathString(), entry);
+            writtenBlobs.put(entry.getPathString(), entry.getObjectId());
+            measurement.add(entry.getLength(), 1);
+        }
+        if (unstagedEntries.size() >= batchSize) {
+            stage();
+        }
+    }
+
     @Override
-    public void close() throws GitPushException, GitAuthenticationException {
+    public synchronized void close() throws GitPushException, GitAuthenticationException {
+        try {
+            flush();
+        } finally {
+            dispose();
+        }
+    }
+
+    /**
+     * Commits and pushes the pending changes, without closing the connection.
+     */
+    public synchronized void flush() throws GitPushException, GitAuthenticationException {
+        if (!awaitOpened()) {
+            // nothing can be pending, as every operation failed
+            return;
+        }
         try {
-            if (needsPush()) {
+            if (bare ? commitIndex() : commitWorkTree()) {
                 pushChanges();
+                if (commitTimeIndex != null) {
+                    commitTimeIndex.close();
+                    commitTimeIndex = null;
+                }
             }
-        } catch (GitAPIException e) {
+            unflushed = false;
+        } catch (GitAPIException | IOException e) {
             throw new GitPushException("failed to push all changes to the remote repository: " + e.getMessage(), e);
         }
+    }
+
+    /**
+     * @return <code>true</code> if a resource was put since the last successful {@link #flush()}
+     */
+    synchronized boolean hasUnflushedPuts() {
+        return unflushed;
+    }
+
+    /**
+     * Checks with a ls-remote whether the branch on the remote is still at the local commit.
+     */
+    synchronized boolean isUpToDate() throws GitException, GitAPIException, IOException {
+        awaitReady();
+        Repository repository = git.getRepository();
+        Ref remote;
+        try (Measurement measurement = metrics.start(Phase.LS_REMOTE)) {
+            remote = git.lsRemote().setRemote(Constants.DEFAULT_REMOTE_NAME).setHeads(true)
+                    .setTransportConfigCallback(transportConfig).setCredentialsProvider(credentialsProvider).callAsMap()
+                    .get(repository.getFullBranch());
+        }
+        ObjectId head = repository.resolve(Constants.HEAD);
+        return remote == null ? head == null : remote.getObjectId().equals(head);
+    }
+
+    /**
+     * Closes the local repository and deletes it, without pushing pending changes.
+     */
+    synchronized void dispose() {
+        awaitOpened();
+        if (commitTimeIndex != null) {
+            commitTimeIndex.close();
+            commitTimeIndex = null;
+        }
         File workTree = git.getRepository().getWorkTree();
         git.close();
-        deleteWorkTree(workTree);
+        transportConfig.close();
+        deleteWorkTree(workTree, metrics);
+        metrics.closed();
     }
 
-    private void copy(Path source, Path destination, CopyOption... copyOptions) throws IOException {
+    /**
+     * Reads the resource from the object database of the branch tip, without a work tree.
+     */
+    private boolean getIfNewerFromRepository(Path resource, Destination destination, long timestamp,
+            Measurement measurement) throws GitException {
+        Path realResource = workingDirectory.resolve(resource).normalize();
+        String repoPath = getRepoPath(realResource);
+        Repository repository = git.getRepository();
+        try (RevWalk walk = new RevWalk(repository)) {
+            ObjectId tree = getTree(walk);
+            if (tree == null) {
+                throw new NoSuchResourceInGitException("resource '" + repoPath + "' does not exist");
+            }
+            ObjectId resourceId = tree;
+            boolean directory = true;
+            if (!".".equals(repoPath)) {
+                try (TreeWalk treeWalk = TreeWalk.forPath(repository, repoPath, tree)) {
+                    if (treeWalk == null) {
+                        throw new NoSuchResourceInGitException("resource '" + repoPath + "' does not exist");
+                    }
+                    resourceId = treeWalk.getObjectId(0);
+                    directory = treeWalk.getFileMode(0) == FileMode.TREE;
+                }
+            }
+            if (repository.resolve(Constants.HEAD) != null && getCommitTime(realResource) <= timestamp) {
+                return false;
+            }
+            if (partial) {
+                fetchMissingBlobs(walk.getObjectReader(), directory ? blobsOf(walk.getObjectReader(), resourceId)
+                        : Collections.singletonList(resourceId));
+            }
+            measurement.add(destination.copyFrom(walk.getObjectReader(), resourceId), 1);
+        } catch (IOException e) {
+            throw new GitException("failed to read resource: " + e.getMessage(), e);
+        }
+        return true;
+    }
+
+    private static List<ObjectId> blobsOf(ObjectReader reader, ObjectId tree) throws IOException {
+        List<ObjectId> blobs = new ArrayList<>();
+        try (TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(tree);
+            treeWalk.setRecursive(true);
+            while (treeWalk.next()) {
+                if (treeWalk.getFileMode(0).getObjectType() == Constants.OBJ_BLOB) {
+                    blobs.add(treeWalk.getObjectId(0));
+                }
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Fetches the blobs which are missing in the partial clone with a single request. With a cache they are fetched
+     * into the mirror, so later connections find them there.
+     */
+    private void fetchMissingBlobs(ObjectReader reader, Collection<ObjectId> blobIds) throws IOException {
+        Set<ObjectId> missing = new LinkedHashSet<>();
+        for (ObjectId blobId : blobIds) {
+            if (!reader.has(blobId)) {
+                missing.add(blobId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return;
+        }
+        Path gitDirectory = mirror.map(LocalMirror::getDirectory)
+                .orElseGet(() -> git.getRepository().getDirectory().toPath());
+        try (Measurement measurement = metrics.start(Phase.FETCH)) {
+            ProgressMonitor monitor = getFetchProgressMonitor(gitDirectory);
+            Set<String> packs = packNames(gitDirectory);
+            if (mirror.isPresent()) {
+                mirror.get().fetchObjects(missing, transportConfig, credentialsProvider, monitor);
+            } else {
+                git.fetch().setRefSpecs(toRefSpecs(missing)).setTransportConfigCallback(transportConfig)
+                        .setCredentialsProvider(credentialsProvider).setProgressMonitor(monitor).call();
+            }
+            addNewPacks(measurement, gitDirectory, packs);
+        } catch (GitAPIException e) {
+            throw new IOException("failed to fetch " + missing.size() + " blobs: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @return source only ref specs to fetch the given objects
+     */
+    static List<RefSpec> toRefSpecs(Collection<ObjectId> objectIds) {
+        List<RefSpec> refSpecs = new ArrayList<>(objectIds.size());
+        for (ObjectId objectId : objectIds) {
+            refSpecs.add(new RefSpec(objectId.name()));
+        }
+        return refSpecs;
+    }
+
+    /**
+     * @return the tree of the branch tip including the changes of all puts (or <code>null</code> if the branch is
+     *         empty)
+     */
+    private ObjectId getTree(RevWalk walk) throws IOException {
+        if (index != null) {
+            try (ObjectInserter inserter = git.getRepository().newObjectInserter()) {
+                ObjectId tree = index.writeTree(inserter);
+                inserter.flush();
+                return tree;
+            }
+        }
+        ObjectId head = git.getRepository().resolve(Constants.HEAD);
+        return head == null ? null : walk.parseCommit(head).getTree();
+    }
+
+    /**
+     * Inserts the source file (or all files of the source directory) into the object database and records them in
+     * the in-memory index, without a work tree.
+     */
+    private void putIntoIndex(Path source, String repoPath, Measurement measurement) throws GitException {
+        String prefix = ".".equals(repoPath) ? "" : repoPath;
+        try {
+            List<Path> files = source.toFile().isDirectory() ? listFiles(source) : Collections.singletonList(source);
+            List<String> paths = new ArrayList<>(files.size());
+            for (Path file : files) {
+                String path = prefix;
+                if (file != source) {
+                    String relativePath = source.relativize(file).toString().replace(File.separatorChar, '/');
+                    path = prefix.isEmpty() ? relativePath : prefix + '/' + relativePath;
+                }
+                paths.add(path);
+            }
+            awaitMirrorLinked();
+            Repository repository = git.getRepository();
+            List<ObjectId> blobIds = processor.process(files, file -> {
+                try (ObjectInserter inserter = repository.newObjectInserter();
+                        InputStream in = Files.newInputStream(file)) {
+                    ObjectId blobId = inserter.insert(Constants.OBJ_BLOB, Files.size(file), in);
+                    inserter.flush();
+                    return blobId;
+                }
+            });
+            // the blobs do not depend on the fetched history, only the index does
+            awaitReady();
+            DirCache currentIndex = getIndex();
+            for (String path : paths) {
+                checkPath(currentIndex, path);
+            }
+            DirCacheEditor editor = currentIndex.editor();
+            for (int i = 0; i < files.size(); i++) {
+                long length = Files.size(files.get(i));
+                editor.add(blobEdit(paths.get(i), blobIds.get(i), length));
+                measurement.add(length, 1);
+            }
+            editor.finish();
+        } catch (IOException e) {
+            throw new GitException("failed to write resource: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Inserts the stream as blob. A stream of unknown length is buffered first (in a temporary file, if it is large),
+     * as the object header contains the length.
+     */
+    private void putStreamIntoIndex(InputStream source, long length, String repoPath, Measurement measurement)
+            throws GitException {
+        awaitMirrorLinked();
+        Repository repository = git.getRepository();
+        try (ObjectInserter inserter = repository.newObjectInserter()) {
+            ObjectId blobId;
+            long blobLength = length;
+            if (length < 0) {
+                TemporaryBuffer buffer = new TemporaryBuffer.LocalFile(repository.getDirectory());
+                try {
+                    buffer.copy(source);
+                    buffer.close();
+                    blobLength = buffer.length();
+                    try (InputStream in = buffer.openInputStream()) {
+                        blobId = inserter.insert(Constants.OBJ_BLOB, blobLength, in);
+                    }
+                } finally {
+                    buffer.destroy();
+                }
+            } else {
+                blobId = inserter.insert(Constants.OBJ_BLOB, length, source);
+            }
+            inserter.flush();
+            awaitReady();
+            DirCache currentIndex = getIndex();
+            checkPath(currentIndex, repoPath);
+            DirCacheEditor editor = currentIndex.editor();
+            editor.add(blobEdit(repoPath, blobId, blobLength));
+            editor.finish();
+            measurement.add(blobLength, 1);
+        } catch (IOException e) {
+            throw new GitException("failed to write resource: " + e.getMessage(), e);
+        }
+    }
+
+    private DirCache getIndex() throws IOException {
+        if (index == null) {
+            DirCache newIndex = DirCache.newInCore();
+            Repository repository = git.getRepository();
+            ObjectId head = repository.resolve(Constants.HEAD);
+            if (head != null) {
+                DirCacheBuilder builder = newIndex.builder();
+                try (RevWalk walk = new RevWalk(repository)) {
+                    builder.addTree(new byte[0], DirCacheEntry.STAGE_0, walk.getObjectReader(),
+                            walk.parseCommit(head).getTree());
+                }
+                builder.finish();
+            }
+            index = newIndex;
+        }
+        return index;
+    }
+
+    private static void checkPath(DirCache index, String path) throws IOException {
+        if (path.isEmpty() || index.getEntriesWithin(path).length > 0) {
+            throw new IOException("'" + path + "' is a directory");
+        }
+        for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+            if (index.findEntry(path.substring(0, slash)) >= 0) {
+                throw new IOException("'" + path.substring(0, slash) + "' is not a directory");
+            }
+        }
+    }
+
+    private static PathEdit blobEdit(String path, ObjectId blobId, long length) {
+        return new PathEdit(path) {
+
+            @Override
+            public void apply(DirCacheEntry entry) {
+                entry.setFileMode(FileMode.REGULAR_FILE);
+                entry.setObjectId(blobId);
+                entry.setLength(length);
+            }
+        };
+    }
+
+    private long copy(ObjectReader reader, ObjectId objectId, Path destination) throws IOException {
+        ObjectLoader loader = reader.open(objectId);
+        if (loader.getType() != Constants.OBJ_TREE) {
+            try (OutputStream out = Files.newOutputStream(destination)) {
+                loader.copyTo(out);
+            }
+            return loader.getSize();
+        }
+        Map<Path, ObjectId> blobs = new LinkedHashMap<>();
+        try (TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(objectId);
+            treeWalk.setRecursive(true);
+            Files.createDirectories(destination);
+            while (treeWalk.next()) {
+                if (treeWalk.getFileMode(0).getObjectType() == Constants.OBJ_BLOB) {
+                    Path target = destination.resolve(treeWalk.getPathString());
+                    Files.createDirectories(target.getParent());
+                    blobs.put(target, treeWalk.getObjectId(0));
+                }
+            }
+        }
+        Repository repository = git.getRepository();
+        return sum(processor.process(new ArrayList<>(blobs.keySet()), target -> {
+            try (ObjectReader blobReader = repository.newObjectReader();
+                    OutputStream out = Files.newOutputStream(target)) {
+                ObjectLoader blobLoader = blobReader.open(blobs.get(target));
+                blobLoader.copyTo(out);
+                return Long.valueOf(blobLoader.getSize());
+            }
+        }));
+    }
+
+    private static long sum(List<Long> values) {
+        long sum = 0;
+        for (Long value : values) {
+            sum += value.longValue();
+        }
+        return sum;
+    }
+
+    /**
+     * The work tree is mutable (later puts and checkouts of the connection rewrite its files), so resources are only
+     * linked to the destination of a get if the <code>link</code> transfer is configured explicitly. The source of a
+     * put is not under our control, so it must not be linked into the work tree.
+     */
+    private long copy(Path source, Path destination, FileTransfer fileTransfer, boolean preserveAttributes)
+            throws IOException {
         if (source.toFile().isDirectory()) {
-            copyDirectory(source, destination, copyOptions);
-        } else {
-            Files.copy(source, destination, copyOptions);
+            return copyDirectory(source, destination, fileTransfer, preserveAttributes);
         }
+        fileTransfer.transfer(source, destination, preserveAttributes);
+        return Files.size(destination);
     }
 
-    private void copyDirectory(Path source, Path destination, CopyOption... copyOptions) throws IOException {
+    /**
+     * Creates the directory structure first and then copies the files concurrently.
+     */
+    private long copyDirectory(Path source, Path destination, FileTransfer fileTransfer, boolean preserveAttributes)
+            throws IOException {
+        List<Path> files = new ArrayList<>();
         Files.walkFileTree(source, new SimpleFileVisitor<Path>() {
 
             @Override
@@ -176,70 +998,304 @@ public class GitConnection implements AutoCloseable {
             }
 
             @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                Files.copy(file, destination.resolve(source.relativize(file)), copyOptions);
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file);
                 return FileVisitResult.CONTINUE;
             }
         });
+        Collections.sort(files);
+        return sum(processor.process(files, file -> {
+            Path target = destination.resolve(source.relativize(file));
+            fileTransfer.transfer(file, target, preserveAttributes);
+            return Long.valueOf(Files.size(target));
+        }));
     }
 
+    private static List<Path> listFiles(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        Collections.sort(files);
+        return files;
+    }
+
+    /**
+     * In a shallow repository the history may be truncated before the last change of the resource. In this case the
+     * oldest fetched commit (or the current time) is used, so the resource is at worst considered to be newer.
+     */
     private long getCommitTime(Path realResource) throws GitException {
-        LogCommand logCommand = git.log().addPath(getRepoPath(realResource)).setMaxCount(1);
-        long commitTime = Instant.now().getEpochSecond();
         try {
-            for (RevCommit commit : logCommand.call()) {
-                commitTime = commit.getCommitTime();
+            if (commitTimeIndex == null) {
+                ObjectId head = git.getRepository().resolve(Constants.HEAD);
+                if (head == null) {
+                    throw new GitException("failed to get git history: branch has no commits");
+                }
+                commitTimeIndex = new CommitTimeIndex(git.getRepository(), head);
             }
-        } catch (GitAPIException e) {
+            OptionalInt commitTime = commitTimeIndex.getCommitTime(getRepoPath(realResource));
+            if (commitTime.isPresent()) {
+                return commitTime.getAsInt();
+            }
+        } catch (MissingObjectException e) {
+            LOGGER.debug("incomplete git history: " + e.getMessage(), e);
+        } catch (IOException e) {
             throw new GitException("failed to get git history", e);
         }
-        return commitTime;
+        return Instant.now().getEpochSecond();
     }
 
+    /**
+     * @return the path in the repository (separated by <code>/</code>, as in the index and in trees)
+     */
     private String getRepoPath(Path realPath) {
-        String path = git.getRepository().getWorkTree().toPath().relativize(realPath).toString();
+        String path = toRepoPath(git.getRepository().getWorkTree().toPath().relativize(realPath));
         return path.isEmpty() ? "." : path;
     }
 
-    private boolean needsPush() throws GitAPIException {
-        return git.status().call().hasUncommittedChanges();
-    }
-
-    private void pushChanges() throws GitAPIException, GitPushException {
-        git.commit().setMessage("[wagon-git] adding files to repository").call();
-        PushCommand pushCommand = git.push().setCredentialsProvider(credentialsProvider);
-        pushCommand.setProgressMonitor(getProgressMonitor());
-        for (PushResult result : pushCommand.call()) {
-            for (RemoteRefUpdate update : result.getRemoteUpdates()) {
-                if (update.getStatus() != OK) {
-                    throw new GitPushException(
-                            "failed to push all changes to the remote repository: " + update.getStatus());
+    /**
+     * Compares the written blobs with the tip of the branch, so only the written paths are looked at (and nothing at
+     * all if nothing was written).
+     *
+     * @return <code>true</code> if a written file differs from the branch tip
+     */
+    private boolean needsPush() throws IOException {
+        if (writtenBlobs.isEmpty()) {
+            return false;
+        }
+        Repository repository = git.getRepository();
+        ObjectId head = repository.resolve(Constants.HEAD);
+        if (head == null) {
+            return true;
+        }
+        try (Measurement measurement = metrics.start(Phase.STATUS); RevWalk walk = new RevWalk(repository);
+                TreeWalk treeWalk = new TreeWalk(walk.getObjectReader())) {
+            treeWalk.addTree(walk.parseCommit(head).getTree());
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(PathFilterGroup.createFromStrings(writtenBlobs.keySet()));
+            int unchanged = 0;
+            while (treeWalk.next()) {
+                if (treeWalk.getFileMode(0) == FileMode.REGULAR_FILE
+                        && treeWalk.getObjectId(0).equals(writtenBlobs.get(treeWalk.getPathString()))) {
+                    unchanged++;
                 }
             }
+            measurement.add(0, writtenBlobs.size());
+            return unchanged < writtenBlobs.size();
         }
     }
 
-    private static void deleteWorkTree(File workTree) {
-        if (!workTree.exists()) {
+    /**
+     * Stages all written files with a single index update.
+     */
+    private void stage() throws IOException {
+        if (unstagedEntries.isEmpty()) {
             return;
         }
-        try {
-            Files.walkFileTree(workTree.toPath(), new SimpleFileVisitor<Path>() {
+        try (Measurement measurement = metrics.start(Phase.STAGE)) {
+            DirCache dirCache = git.getRepository().lockDirCache();
+            try {
+                DirCacheEditor editor = dirCache.editor();
+                for (DirCacheEntry entry : unstagedEntries.values()) {
+                    editor.add(new PathEdit(entry) {
 
-                @Override
-                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                    Files.delete(file);
-                    return FileVisitResult.CONTINUE;
+                        @Override
+                        public void apply(DirCacheEntry indexEntry) {
+                            indexEntry.copyMetaData(entry);
+                        }
+                    });
+                    measurement.add(entry.getLength(), 1);
                 }
+                editor.commit();
+            } finally {
+                dirCache.unlock();
+            }
+        }
+        unstagedEntries.clear();
+    }
+
+    private boolean commitWorkTree() throws GitAPIException, IOException {
+        stage();
+        boolean changed = needsPush();
+        if (changed) {
+            try (Measurement measurement = metrics.start(Phase.COMMIT)) {
+                git.commit().setMessage(COMMIT_MESSAGE).call();
+            }
+        }
+        writtenBlobs.clear();
+        committedIndex = null;
+        return changed;
+    }
+
+    /**
+     * Writes the tree of the in-memory index and commits it on top of the branch tip.
+     *
+     * @return <code>false</code> if there is nothing to commit
+     */
+    private boolean commitIndex() throws IOException {
+        if (index == null) {
+            return false;
+        }
+        Repository repository = git.getRepository();
+        ObjectId head = repository.resolve(Constants.HEAD);
+        try (Measurement measurement = metrics.start(Phase.COMMIT); RevWalk walk = new RevWalk(repository);
+                ObjectInserter inserter = repository.newObjectInserter()) {
+            ObjectId tree = index.writeTree(inserter);
+            if (head != null && tree.equals(walk.parseCommit(head).getTree())) {
+                return false;
+            }
+            CommitBuilder commit = new CommitBuilder();
+            PersonIdent person = new PersonIdent(repository);
+            commit.setAuthor(person);
+            commit.setCommitter(person);
+            commit.setMessage(COMMIT_MESSAGE);
+            commit.setTreeId(tree);
+            if (head != null) {
+                commit.setParentId(head);
+            }
+            ObjectId commitId = inserter.insert(commit);
+            inserter.flush();
+            RefUpdate refUpdate = repository.updateRef(Constants.HEAD);
+            refUpdate.setNewObjectId(commitId);
+            refUpdate.setExpectedOldObjectId(head == null ? ObjectId.zeroId() : head);
+            refUpdate.setRefLogMessage("commit: " + COMMIT_MESSAGE, false);
+            RefUpdate.Result result = refUpdate.update(walk);
+            if (result != RefUpdate.Result.NEW && result != RefUpdate.Result.FAST_FORWARD) {
+                throw new IOException("failed to update " + refUpdate.getName() + ": " + result);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Pushes the local commit. If the remote branch was updated in the meantime, the commit is replayed on top of it
+     * and pushed again (after a randomized, growing delay) up to the configured number of retries.
+     */
+    private void pushChanges() throws GitAPIException, IOException, GitPushException {
+        for (int attempt = 0;; attempt++) {
+            RemoteRefUpdate.Status status = push();
+            if (status == OK) {
+                return;
+            }
+            if (status != REJECTED_NONFASTFORWARD || attempt >= pushRetries) {
+                throw new GitPushException("failed to push all changes to the remote repository: " + status);
+            }
+            LOGGER.info("remote branch changed, retrying push (" + (attempt + 1) + '/' + pushRetries + ')');
+            metrics.retried(Phase.PUSH);
+            backoff(attempt);
+            rebaseOnRemote();
+        }
+    }
 
-                @Override
-                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
-                    Files.delete(dir);
-                    return FileVisitResult.CONTINUE;
+    private RemoteRefUpdate.Status push() throws GitAPIException, IOException {
+        try (Measurement measurement = metrics.start(Phase.PUSH)) {
+            PushCommand pushCommand = git.push().setTransportConfigCallback(transportConfig)
+                    .setCredentialsProvider(credentialsProvider);
+            pushCommand.setProgressMonitor(getProgressMonitor());
+            if (metrics.isDetailed()) {
+                measurement.add(0, countPushedObjects());
+            }
+            for (PushResult result : pushCommand.call()) {
+                for (RemoteRefUpdate update : result.getRemoteUpdates()) {
+                    if (update.getStatus() != OK) {
+                        return update.getStatus();
+                    }
                 }
-            });
-        } catch (IOException e) {
-            LOGGER.warn("failed to delete closed local repository: " + e.getMessage(), e);
+            }
+            return OK;
+        }
+    }
+
+    private static void backoff(int attempt) throws GitPushException {
+        long delay = RETRY_BASE_DELAY_MILLIS << Math.min(attempt, 5);
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(delay / 2, delay + 1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GitPushException("interrupted while waiting to retry the push", e);
+        }
+    }
+
+    /**
+     * Fetches the remote branch and replays the local commit on top of it. The wagon commit only adds or replaces
+     * files, so the three-way merge (with the original parent as base) only fails if the same files were changed
+     * differently.
+     */
+    private void rebaseOnRemote() throws GitAPIException, IOException, GitPushException {
+        Repository repository = git.getRepository();
+        String remoteRef = Constants.R_REMOTES + Constants.DEFAULT_REMOTE_NAME + '/' + repository.getBranch();
+        Path gitDirectory = repository.getDirectory().toPath();
+        try (Measurement measurement = metrics.start(Phase.FETCH)) {
+            FetchCommand fetchCommand = git.fetch().setTransportConfigCallback(fetchConfig(transportConfig, partial))
+                    .setCredentialsProvider(credentialsProvider)
+                    .setRefSpecs(new RefSpec(repository.getFullBranch() + ':' + remoteRef).setForceUpdate(true))
+                    .setProgressMonitor(getFetchProgressMonitor(gitDirectory));
+            if (Files.exists(gitDirectory.resolve(Constants.SHALLOW))) {
+                fetchCommand.setDepth(1);
+            }
+            Set<String> packs = packNames(gitDirectory);
+            fetchCommand.call();
+            addNewPacks(measurement, gitDirectory, packs);
+        }
+        try (RevWalk walk = new RevWalk(repository); ObjectInserter inserter = repository.newObjectInserter()) {
+            RevCommit head = walk.parseCommit(repository.resolve(Constants.HEAD));
+            RevCommit remote = walk.parseCommit(repository.resolve(remoteRef));
+            ObjectId base = head.getParentCount() == 0 ? inserter.insert(new TreeFormatter())
+                    : walk.parseCommit(head.getParent(0)).getTree();
+            MetadataTreeMerger metadataMerger = new MetadataTreeMerger(walk.getObjectReader(), inserter);
+            if (partial) {
+                fetchMissingBlobs(walk.getObjectReader(),
+                        metadataMerger.changedOnBothSides(base, head.getTree(), remote.getTree()));
+            }
+            Map<String, ObjectId> merged = metadataMerger.merge(base, head.getTree(), remote.getTree());
+            ObjectId remoteTree = metadataMerger.withBlobs(remote.getTree(), merged);
+            ObjectId headTree = metadataMerger.withBlobs(head.getTree(), merged);
+            inserter.flush();
+            ResolveMerger merger = (ResolveMerger) MergeStrategy.RESOLVE.newMerger(repository, true);
+            merger.setBase(base);
+            if (!merger.merge(remoteTree, headTree)) {
+                throw new GitPushException(
+                        "failed to push all changes to the remote repository: conflicting changes in "
+                                + merger.getUnmergedPaths());
+            }
+            CommitBuilder commit = new CommitBuilder();
+            commit.setAuthor(head.getAuthorIdent());
+            commit.setCommitter(new PersonIdent(repository));
+            commit.setMessage(head.getFullMessage());
+            commit.setTreeId(merger.getResultTreeId());
+            commit.setParentId(remote);
+            ObjectId rebased = inserter.insert(commit);
+            inserter.flush();
+            if (bare) {
+                index = null;
+            } else if (!sparsePath.isPresent()) {
+                DirCacheCheckout checkout = new DirCacheCheckout(repository, head.getTree(),
+                        repository.lockDirCache(), merger.getResultTreeId());
+                checkout.checkout();
+            }
+            RefUpdate refUpdate = repository.updateRef(Constants.HEAD);
+            refUpdate.setNewObjectId(rebased);
+            refUpdate.setExpectedOldObjectId(head);
+            refUpdate.setRefLogMessage("rebase: " + COMMIT_MESSAGE, false);
+            RefUpdate.Result result = refUpdate.forceUpdate();
+            if (result != RefUpdate.Result.FORCED && result != RefUpdate.Result.FAST_FORWARD) {
+                throw new IOException("failed to update " + refUpdate.getName() + ": " + result);
+            }
+            if (!bare && sparsePath.isPresent()) {
+                // the files outside of the sparse path are only updated in the index
+                checkoutHead(git, sparsePath);
+            }
+        }
+    }
+
+    private static void deleteWorkTree(File workTree, Metrics metrics) {
+        try (Measurement measurement = metrics.start(Phase.DELETE)) {
+            BackgroundDeleter.getInstance().delete(workTree.toPath());
         }
     }
 
@@ -250,16 +1306,227 @@ public class GitConnection implements AutoCloseable {
         return remoteAdd.call();
     }
 
-    private static boolean remoteHasBranch(Git git, String branch) throws GitAPIException {
-        return git.lsRemote().callAsMap().containsKey(Constants.R_HEADS + branch);
+    /**
+     * Sets the size up to which HTTP pushes are buffered (and sent with a content length instead of in chunks).
+     */
+    private static void setPostBuffer(Git git, int postBuffer) throws IOException {
+        StoredConfig config = git.getRepository().getConfig();
+        config.setInt(HttpConfig.HTTP, null, HttpConfig.POST_BUFFER_KEY, postBuffer);
+        config.save();
     }
 
-    private static void fetchAndCheckoutBranch(Git git, String branch, RemoteConfig remoteConfig,
-            CredentialsProvider credentialsProvider) throws GitAPIException {
+    /**
+     * Fetches the branch without a preceding ls-remote; a missing branch is only looked up if the fetch failed.
+     *
+     * @return the fetched remote tracking branch (empty if the remote does not have the branch)
+     */
+    private static Optional<String> fetchBranch(Git git, String branch, OptionalInt depth,
+            TransportConfigCallback transportConfig, RemoteConfig remoteConfig, CredentialsProvider credentialsProvider,
+            Measurement measurement) throws GitAPIException, IOException {
         RefSpec refSpec = remoteConfig.getFetchRefSpecs().get(0).expandFromSource(Constants.R_HEADS + branch);
-        FetchCommand fetchCommand = git.fetch().setCredentialsProvider(credentialsProvider);
-        fetchCommand.setRefSpecs(refSpec).setProgressMonitor(getProgressMonitor()).call();
-        git.checkout().setName(branch).setCreateBranch(true).setStartPoint(refSpec.getDestination()).call();
+        FetchCommand fetchCommand = git.fetch().setTransportConfigCallback(transportConfig)
+                .setCredentialsProvider(credentialsProvider);
+        depth.ifPresent(fetchCommand::setDepth);
+        Path gitDirectory = git.getRepository().getDirectory().toPath();
+        Set<String> packs = packNames(gitDirectory);
+        try {
+            fetchCommand.setRefSpecs(refSpec).setProgressMonitor(getFetchProgressMonitor(gitDirectory)).call();
+        } catch (TransportException e) {
+            if (isMissingBranch(git, Constants.DEFAULT_REMOTE_NAME, branch, transportConfig, credentialsProvider)) {
+                return Optional.empty();
+            }
+            throw e;
+        }
+        addNewPacks(measurement, gitDirectory, packs);
+        return Optional.of(refSpec.getDestination());
+    }
+
+    private static Optional<String> updateMirrorAndFetchBranch(Git git, String branch, OptionalInt depth,
+            TransportConfigCallback transportConfig, RemoteConfig remoteConfig,
+            CredentialsProvider credentialsProvider, LocalMirror mirror, Measurement measurement)
+            throws GitAPIException, IOException {
+        Set<String> packs = packNames(mirror.getDirectory());
+        Optional<ObjectId> branchId = mirror.update(branch, depth, transportConfig, credentialsProvider,
+                getFetchProgressMonitor(mirror.getDirectory()));
+        addNewPacks(measurement, mirror.getDirectory(), packs);
+        if (!branchId.isPresent()) {
+            return Optional.empty();
+        }
+        mirror.linkTo(git.getRepository());
+        RefSpec refSpec = remoteConfig.getFetchRefSpecs().get(0).expandFromSource(Constants.R_HEADS + branch);
+        RefUpdate refUpdate = git.getRepository().updateRef(refSpec.getDestination());
+        refUpdate.setNewObjectId(branchId.get());
+        RefUpdate.Result result = refUpdate.forceUpdate();
+        if (result != RefUpdate.Result.NEW && result != RefUpdate.Result.FORCED
+                && result != RefUpdate.Result.NO_CHANGE && result != RefUpdate.Result.FAST_FORWARD) {
+            throw new IOException("failed to update " + refUpdate.getName() + " to " + branchId.get().name()
+                    + " of the mirror " + mirror.getDirectory() + ": " + result);
+        }
+        return Optional.of(refSpec.getDestination());
+    }
+
+    /**
+     * @return the names of the pack files of the repository (only the directory is listed), to find the packs added
+     *         by a fetch
+     */
+    private static Set<String> packNames(Path gitDirectory) throws IOException {
+        Path packDirectory = gitDirectory.resolve("objects").resolve("pack");
+        Set<String> names = new HashSet<>();
+        if (packDirectory.toFile().isDirectory()) {
+            try (DirectoryStream<Path> packs = Files.newDirectoryStream(packDirectory, "*.pack")) {
+                for (Path pack : packs) {
+                    names.add(pack.getFileName().toString());
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Adds the size and the number of objects (read from the pack header) of the pack files which are not in the given
+     * names, so only the packs received by a fetch are read.
+     */
+    private static void addNewPacks(Measurement measurement, Path gitDirectory, Set<String> before)
+            throws IOException {
+        Path packDirectory = gitDirectory.resolve("objects").resolve("pack");
+        ByteBuffer header = ByteBuffer.allocate(PACK_HEADER_LENGTH);
+        for (String name : packNames(gitDirectory)) {
+            if (before.contains(name)) {
+                continue;
+            }
+            header.clear();
+            try (FileChannel channel = FileChannel.open(packDirectory.resolve(name))) {
+                while (header.hasRemaining() && channel.read(header) >= 0) {
+                    // read the complete header
+                }
+                // signature "PACK", version and number of objects (network byte order)
+                measurement.add(channel.size(),
+                        header.hasRemaining() ? 0 : header.getInt(PACK_HEADER_LENGTH - Integer.BYTES) & 0xFFFFFFFFL);
+            } catch (NoSuchFileException e) {
+                // deleted concurrently
+            }
+        }
+    }
+
+    /**
+     * @return the size of the packs which are currently received into the repository
+     */
+    private static long incomingPackSize(Path gitDirectory) throws IOException {
+        long size = 0;
+        try (DirectoryStream<Path> packs = Files.newDirectoryStream(gitDirectory.resolve("objects"),
+                "incoming_*.pack")) {
+            for (Path pack : packs) {
+                size += size(pack);
+            }
+        }
+        return size;
+    }
+
+    private static long size(Path file) throws IOException {
+        try {
+            return Files.size(file);
+        } catch (NoSuchFileException e) {
+            // renamed or deleted concurrently
+            return 0;
+        }
+    }
+
+    /**
+     * @return the number of objects which the push sends: the commits since the remote tracking branch and the trees
+     *         and blobs which differ from its tree (only counted for {@link Metrics#isDetailed() detailed} metrics, as
+     *         it walks the changed trees)
+     */
+    private long countPushedObjects() throws IOException {
+        Repository repository = git.getRepository();
+        ObjectId head = repository.resolve(Constants.HEAD);
+        if (head == null) {
+            return 0;
+        }
+        ObjectId remote = repository
+                .resolve(Constants.R_REMOTES + Constants.DEFAULT_REMOTE_NAME + '/' + repository.getBranch());
+        try (RevWalk walk = new RevWalk(repository); TreeWalk treeWalk = new TreeWalk(repository)) {
+            RevCommit headCommit = walk.parseCommit(head);
+            RevCommit remoteCommit = remote == null ? null : walk.parseCommit(remote);
+            walk.markStart(headCommit);
+            if (remoteCommit != null) {
+                walk.markUninteresting(remoteCommit);
+            }
+            long objects = 0;
+            while (walk.next() != null) {
+                objects++;
+            }
+            if (remoteCommit == null) {
+                treeWalk.addTree(new EmptyTreeIterator());
+            } else if (remoteCommit.getTree().equals(headCommit.getTree())) {
+                return objects;
+            } else {
+                treeWalk.addTree(remoteCommit.getTree());
+            }
+            treeWalk.addTree(headCommit.getTree());
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            // the root tree
+            objects++;
+            while (treeWalk.next()) {
+                if (treeWalk.getFileMode(1) != FileMode.MISSING) {
+                    objects++;
+                }
+                if (treeWalk.isSubtree()) {
+                    treeWalk.enterSubtree();
+                }
+            }
+            return objects;
+        }
+    }
+
+    /**
+     * Checks, after a failed fetch of the branch, whether the remote does not have it.
+     */
+    static boolean isMissingBranch(Git git, String remote, String branch, TransportConfigCallback transportConfig,
+            CredentialsProvider credentialsProvider) {
+        try {
+            return !git.lsRemote().setRemote(remote).setHeads(true).setTransportConfigCallback(transportConfig)
+                    .setCredentialsProvider(credentialsProvider).callAsMap().containsKey(Constants.R_HEADS + branch);
+        } catch (GitAPIException | RuntimeException e) {
+            // the fetch failed for another reason
+            return false;
+        }
+    }
+
+    private static void createBranch(Git git, String branch, String startPoint) throws GitAPIException, IOException {
+        git.branchCreate().setName(branch).setStartPoint(startPoint).call();
+        git.getRepository().updateRef(Constants.HEAD).link(Constants.R_HEADS + branch);
+    }
+
+    /**
+     * Populates the index with the complete tree of <code>HEAD</code>, but writes only the files below the sparse path
+     * (if any) to the work tree.
+     */
+    private static void checkoutHead(Git git, Optional<String> sparsePath) throws GitAPIException, IOException {
+        Repository repository = git.getRepository();
+        ObjectId head = repository.resolve(Constants.HEAD);
+        if (head == null) {
+            return;
+        }
+        DirCache index = repository.lockDirCache();
+        try (RevWalk walk = new RevWalk(repository)) {
+            DirCacheBuilder builder = index.builder();
+            builder.addTree(new byte[0], DirCacheEntry.STAGE_0, walk.getObjectReader(),
+                    walk.parseCommit(head).getTree());
+            builder.commit();
+        } finally {
+            index.unlock();
+        }
+        CheckoutCommand checkoutCommand = git.checkout();
+        if (sparsePath.isPresent()) {
+            checkoutCommand.addPath(sparsePath.get());
+        } else {
+            checkoutCommand.setAllPaths(true);
+        }
+        checkoutCommand.call();
+    }
+
+    private static String toRepoPath(Path path) {
+        return path.toString().replace(File.separatorChar, '/');
     }
 
     private static boolean isAuthenticationFailureMessage(String message) {
@@ -270,4 +1537,34 @@ public class GitConnection implements AutoCloseable {
         return new LoggerProgressMonitor();
     }
 
+    /**
+     * @return a progress monitor which reports the throughput of the pack received into the repository
+     */
+    private static ProgressMonitor getFetchProgressMonitor(Path gitDirectory) {
+        return new LoggerProgressMonitor(() -> {
+            try {
+                return incomingPackSize(gitDirectory);
+            } catch (IOException e) {
+                return 0;
+            }
+        });
+    }
+
+    /**
+     * Destination of a get, which is either copied from the work tree or from the object database.
+     */
+    private interface Destination {
+
+        /**
+         * @return the number of bytes copied
+         */
+        long copyFrom(Path file) throws IOException;
+
+        /**
+         * @return the number of bytes copied
+         */
+        long copyFrom(ObjectReader reader, ObjectId objectId) throws IOException;
+
+    }
+
 }
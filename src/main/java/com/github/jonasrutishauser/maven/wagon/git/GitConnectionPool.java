@@ -0,0 +1,184 @@
+package com.github.jonasrutishauser.maven.wagon.git;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.jonasrutishauser.maven.wagon.git.exception.GitAuthenticationException;
+import com.github.jonasrutishauser.maven.wagon.git.exception.GitCloneException;
+import com.github.jonasrutishauser.maven.wagon.git.exception.GitPushException;
+
+/**
+ * Process-wide pool of connections, shared by all wagons with the same configuration and user. The first lease opens
+ * the connection and further leases reuse it, concurrently or later. The release of the last concurrent lease commits
+ * and pushes the changes of all of them at once; earlier releases with pending changes wait for this push and fail
+ * with it. An idle connection is only reused if the remote branch did not change
+ * in the meantime (checked with a ls-remote), otherwise it is replaced by a fresh one.
+ */
+public class GitConnectionPool {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(GitConnectionPool.class);
+
+    private final ConcurrentMap<List<Object>, Entry> entries = new ConcurrentHashMap<>();
+
+    GitConnectionPool() {}
+
+    public static GitConnectionPool getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    public GitConnection acquire(GitConfiguration configuration, Optional<String> username,
+            Optional<String> password) throws GitCloneException, GitAuthenticationException {
+        return entries.computeIfAbsent(Arrays.asList(configuration, username), key -> new Entry())
+                .acquire(configuration, username, password);
+    }
+
+    /**
+     * Releases a connection returned by {@link #acquire(GitConfiguration, Optional, Optional)}. The pending changes
+     * are pushed if this was the last lease. Otherwise, if there are pending changes, this waits until the last lease
+     * is released and throws the exception of its push (so the lease must not be released by the thread which still
+     * holds the last one).
+     */
+    public void release(GitConnection connection) throws GitPushException, GitAuthenticationException {
+        for (Entry entry : entries.values()) {
+            if (entry.release(connection)) {
+                return;
+            }
+        }
+        throw new IllegalStateException("connection is not leased from this pool");
+    }
+
+    /**
+     * Closes all connections without pushing pending changes.
+     */
+    void dispose() {
+        for (Entry entry : entries.values()) {
+            entry.dispose();
+        }
+        entries.clear();
+    }
+
+    private static class Entry {
+
+        private GitConnection connection;
+
+        private int leases;
+
+        /**
+         * Completed by the push of the last release of the current leases.
+         */
+        private CompletableFuture<Void> flushed = new CompletableFuture<>();
+
+        synchronized GitConnection acquire(GitConfiguration configuration, Optional<String> username,
+                Optional<String> password) throws GitCloneException, GitAuthenticationException {
+            if (connection != null && leases == 0 && !isUpToDate(connection)) {
+                dispose();
+            }
+            if (connection == null) {
+                connection = GitConnection.open(configuration, username, password);
+            }
+            leases++;
+            return connection;
+        }
+
+        boolean release(GitConnection released) throws GitPushException, GitAuthenticationException {
+            CompletableFuture<Void> result;
+            synchronized (this) {
+                if (released != connection || leases == 0) {
+                    return false;
+                }
+                leases--;
+                result = flushed;
+                if (leases == 0) {
+                    flushed = new CompletableFuture<>();
+                    flush(result);
+                } else if (!connection.hasUnflushedPuts()) {
+                    return true;
+                }
+            }
+            await(result);
+            return true;
+        }
+
+        private void flush(CompletableFuture<Void> result) {
+            try {
+                connection.flush();
+                result.complete(null);
+            } catch (GitPushException | GitAuthenticationException | RuntimeException | Error e) {
+                dispose();
+                result.completeExceptionally(e);
+            }
+        }
+
+        private static void await(CompletableFuture<Void> result) throws GitPushException, GitAuthenticationException {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new GitPushException("interrupted while waiting for the push of the pending changes", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof GitPushException) {
+                    throw (GitPushException) cause;
+                }
+                if (cause instanceof GitAuthenticationException) {
+                    throw (GitAuthenticationException) cause;
+                }
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw (Error) cause;
+            }
+        }
+
+        synchronized void dispose() {
+            if (connection != null) {
+                connection.dispose();
+                connection = null;
+            }
+        }
+
+        private static boolean isUpToDate(GitConnection connection) {
+            try {
+                return connection.isUpToDate();
+            } catch (Exception e) {
+                LOGGER.debug("failed to check the remote branch: " + e.getMessage(), e);
+                return false;
+            }
+        }
+
+    }
+
+    private static class Holder {
+        private static final GitConnectionPool INSTANCE = new GitConnectionPool();
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(INSTANCE::dispose, "wagon-git-pool-shutdown"));
+        }
+    }
+
+}
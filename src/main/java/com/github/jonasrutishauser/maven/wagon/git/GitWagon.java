@@ -18,12 +18,17 @@ package com.github.jonasrutishauser.maven.wagon.git;
  */
 
 import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 import org.apache.maven.wagon.AbstractWagon;
 import org.apache.maven.wagon.ConnectionException;
 import org.apache.maven.wagon.ResourceDoesNotExistException;
+import org.apache.maven.wagon.StreamingWagon;
 import org.apache.maven.wagon.TransferFailedException;
 import org.apache.maven.wagon.authentication.AuthenticationException;
 import org.apache.maven.wagon.authorization.AuthorizationException;
@@ -34,13 +39,20 @@ import com.github.jonasrutishauser.maven.wagon.git.exception.GitException;
 import com.github.jonasrutishauser.maven.wagon.git.exception.GitPushException;
 import com.github.jonasrutishauser.maven.wagon.git.exception.NoSuchResourceInGitException;
 
-public class GitWagon extends AbstractWagon {
+public class GitWagon extends AbstractWagon implements StreamingWagon {
 
     private GitConnection connection;
 
+    private boolean pooled;
+
+    private Integer postBuffer;
+
+    private Integer gitTimeout;
+
     @Override
     protected void openConnectionInternal() throws ConnectionException, AuthenticationException {
-        GitConfiguration configuration = GitConfiguration.parse(getRepository().getUrl());
+        GitConfiguration configuration = GitConfiguration.parse(getRepository().getUrl()).withDefaults(defaults());
+        pooled = configuration.isPooled();
         try {
             connection = openGitConnection(configuration);
         } catch (GitCloneException e) {
@@ -50,16 +62,51 @@ public class GitWagon extends AbstractWagon {
         }
     }
 
+    private Map<String, String> defaults() {
+        Map<String, String> defaults = new HashMap<>();
+        if (postBuffer != null) {
+            defaults.put(GitConfiguration.POST_BUFFER_OPTION, postBuffer.toString());
+        }
+        if (gitTimeout != null) {
+            defaults.put(GitConfiguration.TIMEOUT_OPTION, gitTimeout.toString());
+        }
+        return defaults;
+    }
+
+    /**
+     * Default of the URL option <code>postBuffer</code> (set by the <code>configuration</code> of the server in the
+     * Maven settings).
+     */
+    public void setPostBuffer(int postBuffer) {
+        this.postBuffer = postBuffer;
+    }
+
+    /**
+     * Default of the URL option <code>timeout</code> (set by the <code>configuration</code> of the server in the Maven
+     * settings; <code>timeout</code> itself is the connection timeout of every wagon).
+     */
+    public void setGitTimeout(int gitTimeout) {
+        this.gitTimeout = gitTimeout;
+    }
+
     GitConnection openGitConnection(GitConfiguration configuration)
             throws GitCloneException, GitAuthenticationException {
-        return GitConnection.open(configuration, Optional.ofNullable(getAuthenticationInfo().getUserName()),
-                Optional.ofNullable(getAuthenticationInfo().getPassword()));
+        Optional<String> username = Optional.ofNullable(getAuthenticationInfo().getUserName());
+        Optional<String> password = Optional.ofNullable(getAuthenticationInfo().getPassword());
+        if (configuration.isPooled()) {
+            return GitConnectionPool.getInstance().acquire(configuration, username, password);
+        }
+        return GitConnection.open(configuration, username, password);
     }
 
     @Override
     protected void closeConnection() throws ConnectionException {
         try {
-            connection.close();
+            if (pooled) {
+                GitConnectionPool.getInstance().release(connection);
+            } else {
+                connection.close();
+            }
         } catch (GitPushException | GitAuthenticationException e) {
             throw new ConnectionException("failed to close the git connection: " + e.getMessage(), e);
         }
@@ -83,6 +130,24 @@ public class GitWagon extends AbstractWagon {
         }
     }
 
+    @Override
+    public void getToStream(String resourceName, OutputStream stream)
+            throws ResourceDoesNotExistException, TransferFailedException, AuthorizationException {
+        getIfNewerToStream(resourceName, stream, Long.MIN_VALUE);
+    }
+
+    @Override
+    public boolean getIfNewerToStream(String resourceName, OutputStream stream, long timestamp)
+            throws ResourceDoesNotExistException, TransferFailedException, AuthorizationException {
+        try {
+            return connection.getIfNewer(Paths.get(resourceName), stream, timestamp);
+        } catch (NoSuchResourceInGitException e) {
+            throw new ResourceDoesNotExistException("resource does not exist in git: " + e.getMessage(), e);
+        } catch (GitException e) {
+            throw new TransferFailedException("failed to get git resource: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public void put(File source, String destination)
             throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
@@ -93,6 +158,26 @@ public class GitWagon extends AbstractWagon {
         }
     }
 
+    /**
+     * @deprecated use {@link #putFromStream(InputStream, String, long, long)} (like {@link StreamingWagon})
+     */
+    @Override
+    @Deprecated
+    public void putFromStream(InputStream stream, String destination)
+            throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        putFromStream(stream, destination, -1, 0);
+    }
+
+    @Override
+    public void putFromStream(InputStream stream, String destination, long contentLength, long lastModified)
+            throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
+        try {
+            connection.put(stream, contentLength, Paths.get(destination));
+        } catch (GitException e) {
+            throw new TransferFailedException("failed to put git resource: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public void putDirectory(File sourceDirectory, String destinationDirectory)
             throws TransferFailedException, ResourceDoesNotExistException, AuthorizationException {
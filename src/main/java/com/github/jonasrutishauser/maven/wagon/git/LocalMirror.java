@@ -0,0 +1,189 @@
+package com.github.jonasrutishauser.maven.wagon.git;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.jgit.api.FetchCommand;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.TransportConfigCallback;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.api.errors.TransportException;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.RefSpec;
+
+/**
+ * Persistent bare repository which keeps the objects of a remote repository between connections. Local repositories
+ * borrow the objects of the mirror (as alternate object database), so only the objects added to the remote since the
+ * last update have to be fetched.
+ */
+public class LocalMirror {
+
+    private static final String LOCK_FILE = "wagon-git.lock";
+
+    private static final String PARTIAL_SUFFIX = "-partial";
+
+    private static final String SHALLOW_SUFFIX = "-shallow";
+
+    private static final ConcurrentMap<Path, Object> LOCKS = new ConcurrentHashMap<>();
+
+    private final Path directory;
+
+    private final String url;
+
+    LocalMirror(Path directory, String url) {
+        this.directory = directory;
+        this.url = url;
+    }
+
+    public static LocalMirror of(Path cacheDirectory, String url) {
+        return of(cacheDirectory, url, false, false);
+    }
+
+    /**
+     * @param partial
+     *            whether the mirror contains only the commits and trees, and the blobs which were read (a partial
+     *            mirror is kept apart from the complete one of the same remote)
+     * @param shallow
+     *            whether the mirror is fetched with a limited depth (a shallow mirror is kept apart from the one with
+     *            the full history of the same remote)
+     */
+    public static LocalMirror of(Path cacheDirectory, String url, boolean partial, boolean shallow) {
+        return new LocalMirror(cacheDirectory.resolve(
+                hash(url) + (partial ? PARTIAL_SUFFIX : "") + (shallow ? SHALLOW_SUFFIX : "")), url);
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Fetches the given branch from the remote into the mirror.
+     *
+     * @param transportConfig
+     *            configures the transport (e.g. the filter of a partial mirror)
+     * @return the id of the fetched commit (empty if the remote does not have the branch)
+     */
+    public Optional<ObjectId> update(String branch, OptionalInt depth, TransportConfigCallback transportConfig,
+            CredentialsProvider credentialsProvider, ProgressMonitor monitor) throws GitAPIException, IOException {
+        return locked(git -> {
+            String ref = Constants.R_HEADS + branch;
+            FetchCommand fetchCommand = git.fetch().setRemote(url)
+                    .setRefSpecs(new RefSpec(ref + ':' + ref).setForceUpdate(true));
+            depth.ifPresent(fetchCommand::setDepth);
+            try {
+                fetchCommand.setTransportConfigCallback(transportConfig).setCredentialsProvider(credentialsProvider)
+                        .setProgressMonitor(monitor).call();
+            } catch (TransportException e) {
+                if (GitConnection.isMissingBranch(git, url, branch, transportConfig, credentialsProvider)) {
+                    return Optional.empty();
+                }
+                throw e;
+            }
+            Ref fetched = git.getRepository().exactRef(ref);
+            if (fetched == null) {
+                throw new IOException("branch '" + branch + "' not fetched into " + directory);
+            }
+            return Optional.of(fetched.getObjectId());
+        });
+    }
+
+    /**
+     * Fetches the given objects (the blobs omitted by a partial mirror) from the remote into the mirror.
+     */
+    public void fetchObjects(Collection<ObjectId> objectIds, TransportConfigCallback transportConfig,
+            CredentialsProvider credentialsProvider, ProgressMonitor monitor) throws GitAPIException, IOException {
+        locked(git -> git.fetch().setRemote(url).setRefSpecs(GitConnection.toRefSpecs(objectIds))
+                .setTransportConfigCallback(transportConfig).setCredentialsProvider(credentialsProvider)
+                .setProgressMonitor(monitor).call());
+    }
+
+    /**
+     * Makes all objects of the mirror available in the given repository. The shallow commits of the mirror are
+     * copied, as they are not shared through the alternate object database (while the mirror is locked, so they
+     * match its objects).
+     */
+    public void linkTo(Repository repository) throws GitAPIException, IOException {
+        locked(git -> {
+            Path alternates = repository.getDirectory().toPath().resolve("objects/info/alternates");
+            Files.createDirectories(alternates.getParent());
+            Files.write(alternates,
+                    Collections.singleton(directory.resolve("objects").toAbsolutePath().toString()), UTF_8);
+            Path shallow = directory.resolve(Constants.SHALLOW);
+            if (Files.exists(shallow)) {
+                Files.copy(shallow, repository.getDirectory().toPath().resolve(Constants.SHALLOW),
+                        StandardCopyOption.REPLACE_EXISTING);
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Runs the operation on the mirror, while no other thread or process uses it.
+     */
+    private <T> T locked(Operation<T> operation) throws GitAPIException, IOException {
+        synchronized (LOCKS.computeIfAbsent(directory, key -> new Object())) {
+            Files.createDirectories(directory);
+            try (FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK_FILE), CREATE, WRITE);
+                    FileLock lock = lockChannel.lock();
+                    Git git = openOrCreate()) {
+                return operation.apply(git);
+            }
+        }
+    }
+
+    private Git openOrCreate() throws GitAPIException, IOException {
+        if (Files.exists(directory.resolve(Constants.CONFIG))) {
+            return Git.open(directory.toFile());
+        }
+        return Git.init().setBare(true).setDirectory(directory.toFile()).call();
+    }
+
+    private static String hash(String url) {
+        MessageDigest digest = Constants.newMessageDigest();
+        return ObjectId.fromRaw(digest.digest(url.getBytes(UTF_8))).name();
+    }
+
+    private interface Operation<T> {
+
+        T apply(Git git) throws GitAPIException, IOException;
+
+    }
+
+}
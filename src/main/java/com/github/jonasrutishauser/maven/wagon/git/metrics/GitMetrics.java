@@ -0,0 +1,53 @@
+package com.github.jonasrutishauser.maven.wagon.git.metrics;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+/**
+ * Receives the measurements of all connections. Implementations are registered as service (in
+ * <code>META-INF/services/com.github.jonasrutishauser.maven.wagon.git.metrics.GitMetrics</code>) and must be thread
+ * safe.
+ */
+public interface GitMetrics {
+
+    /**
+     * Records one execution of a phase (successful or not).
+     *
+     * @param url
+     *            the URL of the remote repository (without credentials)
+     * @param connection
+     *            identifies the connection (unique within the JVM, several connections may use the same URL)
+     * @param bytes
+     *            the number of bytes transferred (0 if unknown)
+     * @param objects
+     *            the number of objects (files, index entries or git objects) processed (0 if unknown)
+     */
+    void record(String url, long connection, Phase phase, long durationNanos, long bytes, long objects);
+
+    /**
+     * Records that a phase is repeated, e.g. a push which was rejected because the remote branch changed.
+     */
+    void retried(String url, long connection, Phase phase);
+
+    /**
+     * Called when a connection to the remote repository is closed.
+     */
+    default void closed(String url, long connection) {
+        // nothing to do by default
+    }
+
+}
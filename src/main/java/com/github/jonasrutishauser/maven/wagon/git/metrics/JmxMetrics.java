@@ -0,0 +1,88 @@
+package com.github.jonasrutishauser.maven.wagon.git.metrics;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.MalformedObjectNameException;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Publishes the cumulated measurements of every remote repository and phase as MXBean named
+ * <code>com.github.jonasrutishauser.maven.wagon.git:type=PhaseStatistics,url="[url]",phase=[phase]</code>.
+ */
+public class JmxMetrics implements GitMetrics {
+
+    static final String DOMAIN = "com.github.jonasrutishauser.maven.wagon.git";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(JmxMetrics.class);
+
+    private final MBeanServer server;
+
+    private final ConcurrentMap<ObjectName, PhaseStatistics> statistics = new ConcurrentHashMap<>();
+
+    public JmxMetrics() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    JmxMetrics(MBeanServer server) {
+        this.server = server;
+    }
+
+    @Override
+    public void record(String url, long connection, Phase phase, long durationNanos, long bytes, long objects) {
+        getStatistics(url, phase).record(durationNanos, bytes, objects);
+    }
+
+    @Override
+    public void retried(String url, long connection, Phase phase) {
+        getStatistics(url, phase).retried();
+    }
+
+    static ObjectName objectName(String url, Phase phase) {
+        try {
+            return new ObjectName(DOMAIN + ":type=PhaseStatistics,url=" + ObjectName.quote(url) + ",phase="
+                    + phase.getName());
+        } catch (MalformedObjectNameException e) {
+            throw new IllegalArgumentException("invalid url: " + url, e);
+        }
+    }
+
+    private PhaseStatistics getStatistics(String url, Phase phase) {
+        return statistics.computeIfAbsent(objectName(url, phase), this::register);
+    }
+
+    private PhaseStatistics register(ObjectName name) {
+        PhaseStatistics phaseStatistics = new PhaseStatistics();
+        try {
+            server.registerMBean(phaseStatistics, name);
+        } catch (JMException e) {
+            // e.g. registered by another class loader of the same JVM
+            LOGGER.debug("failed to register " + name + ": " + e.getMessage(), e);
+        }
+        return phaseStatistics;
+    }
+
+}
@@ -0,0 +1,107 @@
+package com.github.jonasrutishauser.maven.wagon.git.metrics;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Logs a summary of the measurements of a connection (at debug level) when it is closed.
+ */
+public class LoggingMetrics implements GitMetrics {
+
+    private final Logger logger;
+
+    private final ConcurrentMap<Long, Map<Phase, PhaseStatistics>> statistics = new ConcurrentHashMap<>();
+
+    public LoggingMetrics() {
+        this(LoggerFactory.getLogger(LoggingMetrics.class));
+    }
+
+    LoggingMetrics(Logger logger) {
+        this.logger = logger;
+    }
+
+    @Override
+    public void record(String url, long connection, Phase phase, long durationNanos, long bytes, long objects) {
+        if (logger.isDebugEnabled()) {
+            getStatistics(connection, phase).record(durationNanos, bytes, objects);
+        }
+    }
+
+    @Override
+    public void retried(String url, long connection, Phase phase) {
+        if (logger.isDebugEnabled()) {
+            getStatistics(connection, phase).retried();
+        }
+    }
+
+    @Override
+    public void closed(String url, long connection) {
+        Map<Phase, PhaseStatistics> phases = statistics.remove(connection);
+        if (phases == null || !logger.isDebugEnabled()) {
+            return;
+        }
+        StringBuilder summary = new StringBuilder("git metrics of ").append(url).append(" (connection ")
+                .append(connection).append("):");
+        synchronized (phases) {
+            String separator = " ";
+            for (Map.Entry<Phase, PhaseStatistics> phase : phases.entrySet()) {
+                append(summary.append(separator), phase.getKey(), phase.getValue());
+                separator = "; ";
+            }
+        }
+        logger.debug(summary.toString());
+    }
+
+    private Map<Phase, PhaseStatistics> getStatistics(long connection) {
+        return statistics.computeIfAbsent(connection, key -> new EnumMap<>(Phase.class));
+    }
+
+    private PhaseStatistics getStatistics(long connection, Phase phase) {
+        Map<Phase, PhaseStatistics> phases = getStatistics(connection);
+        synchronized (phases) {
+            return phases.computeIfAbsent(phase, key -> new PhaseStatistics());
+        }
+    }
+
+    private static void append(StringBuilder summary, Phase phase, PhaseStatistics statistics) {
+        summary.append(phase.getName()).append(' ').append(statistics.getCount()).append("x ")
+                .append(String.format(Locale.ROOT, "%.1f ms", Double.valueOf(statistics.getTotalTimeMillis())));
+        StringBuilder details = new StringBuilder();
+        if (statistics.getObjects() > 0) {
+            details.append(statistics.getObjects()).append(" objects");
+        }
+        if (statistics.getBytes() > 0) {
+            details.append(details.length() > 0 ? ", " : "").append(statistics.getBytes()).append(" bytes");
+        }
+        if (statistics.getRetries() > 0) {
+            details.append(details.length() > 0 ? ", " : "").append(statistics.getRetries()).append(" retries");
+        }
+        if (details.length() > 0) {
+            summary.append(" (").append(details).append(')');
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+package com.github.jonasrutishauser.maven.wagon.git.metrics;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+/**
+ * Measures the duration of a phase and collects the transferred bytes and objects.
+ */
+public class Measurement implements AutoCloseable {
+
+    private final Metrics metrics;
+
+    private final Phase phase;
+
+    private final long start = System.nanoTime();
+
+    private long bytes;
+
+    private long objects;
+
+    Measurement(Metrics metrics, Phase phase) {
+        this.metrics = metrics;
+        this.phase = phase;
+    }
+
+    public synchronized Measurement add(long bytes, long objects) {
+        this.bytes += bytes;
+        this.objects += objects;
+        return this;
+    }
+
+    /**
+     * Records the measurement.
+     */
+    @Override
+    public void close() {
+        long duration = System.nanoTime() - start;
+        synchronized (this) {
+            metrics.record(phase, duration, bytes, objects);
+        }
+    }
+
+}
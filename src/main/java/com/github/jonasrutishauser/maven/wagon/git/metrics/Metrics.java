@@ -0,0 +1,131 @@
+package com.github.jonasrutishauser.maven.wagon.git.metrics;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jgit.transport.URIish;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Measurements of one connection to a remote repository, forwarded to the built-in {@link JmxMetrics} and
+ * {@link LoggingMetrics} and to all {@link GitMetrics} services.
+ */
+public class Metrics {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Metrics.class);
+
+    private static final List<GitMetrics> PROVIDERS = loadProviders();
+
+    private static final AtomicLong CONNECTIONS = new AtomicLong();
+
+    private final String url;
+
+    private final long connection;
+
+    private final List<GitMetrics> providers;
+
+    private final boolean detailed;
+
+    Metrics(String url, List<GitMetrics> providers) {
+        this.url = url;
+        this.connection = CONNECTIONS.incrementAndGet();
+        this.providers = providers;
+        this.detailed = providers.stream()
+                .anyMatch(provider -> !(provider instanceof JmxMetrics) && !(provider instanceof LoggingMetrics));
+    }
+
+    /**
+     * @param url
+     *            the URL of the remote repository (credentials are removed)
+     * @return the measurements of a new connection
+     */
+    public static Metrics of(String url) {
+        return new Metrics(withoutCredentials(url), PROVIDERS);
+    }
+
+    /**
+     * @return <code>true</code> if a {@link GitMetrics} service is registered besides the built-in ones, so
+     *         measurements which cost extra work (like counting the objects of a push) are worth it
+     */
+    public boolean isDetailed() {
+        return detailed;
+    }
+
+    /**
+     * Starts the measurement of a phase, which is recorded when it is closed.
+     */
+    public Measurement start(Phase phase) {
+        return new Measurement(this, phase);
+    }
+
+    public void retried(Phase phase) {
+        for (GitMetrics provider : providers) {
+            try {
+                provider.retried(url, connection, phase);
+            } catch (RuntimeException e) {
+                LOGGER.debug("metrics provider failed: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    public void closed() {
+        for (GitMetrics provider : providers) {
+            try {
+                provider.closed(url, connection);
+            } catch (RuntimeException e) {
+                LOGGER.debug("metrics provider failed: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    void record(Phase phase, long durationNanos, long bytes, long objects) {
+        for (GitMetrics provider : providers) {
+            try {
+                provider.record(url, connection, phase, durationNanos, bytes, objects);
+            } catch (RuntimeException e) {
+                LOGGER.debug("metrics provider failed: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    static String withoutCredentials(String url) {
+        try {
+            return new URIish(url).setUser(null).setPass(null).toString();
+        } catch (URISyntaxException e) {
+            return url;
+        }
+    }
+
+    private static List<GitMetrics> loadProviders() {
+        List<GitMetrics> providers = new ArrayList<>();
+        providers.add(new JmxMetrics());
+        providers.add(new LoggingMetrics());
+        for (GitMetrics provider : ServiceLoader.load(GitMetrics.class, GitMetrics.class.getClassLoader())) {
+            providers.add(provider);
+        }
+        return Collections.unmodifiableList(providers);
+    }
+
+}
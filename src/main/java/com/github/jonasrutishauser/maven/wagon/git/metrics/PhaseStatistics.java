@@ -0,0 +1,122 @@
+package com.github.jonasrutishauser.maven.wagon.git.metrics;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread safe accumulator of the measurements of a phase, with a latency histogram of fixed buckets.
+ */
+public class PhaseStatistics implements PhaseStatisticsMXBean {
+
+    private static final long[] BUCKET_LIMITS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000,
+            20000, 50000, 100000};
+
+    private final LongAdder count = new LongAdder();
+
+    private final LongAdder totalNanos = new LongAdder();
+
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    private final LongAdder bytes = new LongAdder();
+
+    private final LongAdder objects = new LongAdder();
+
+    private final LongAdder retries = new LongAdder();
+
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_LIMITS_MILLIS.length + 1);
+
+    public void record(long durationNanos, long bytes, long objects) {
+        count.increment();
+        totalNanos.add(durationNanos);
+        maxNanos.accumulateAndGet(durationNanos, Math::max);
+        this.bytes.add(bytes);
+        this.objects.add(objects);
+        histogram.incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMillis(durationNanos)));
+    }
+
+    public void retried() {
+        retries.increment();
+    }
+
+    @Override
+    public long getCount() {
+        return count.sum();
+    }
+
+    @Override
+    public double getTotalTimeMillis() {
+        return toMillis(totalNanos.sum());
+    }
+
+    @Override
+    public double getMeanTimeMillis() {
+        long executions = getCount();
+        return executions == 0 ? 0 : toMillis(totalNanos.sum()) / executions;
+    }
+
+    @Override
+    public double getMaxTimeMillis() {
+        return toMillis(maxNanos.get());
+    }
+
+    @Override
+    public long getBytes() {
+        return bytes.sum();
+    }
+
+    @Override
+    public long getObjects() {
+        return objects.sum();
+    }
+
+    @Override
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    @Override
+    public long[] getLatencyBucketLimitsMillis() {
+        return BUCKET_LIMITS_MILLIS.clone();
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        long[] result = new long[histogram.length()];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = histogram.get(i);
+        }
+        return result;
+    }
+
+    private static int bucket(long millis) {
+        int bucket = 0;
+        while (bucket < BUCKET_LIMITS_MILLIS.length && millis >= BUCKET_LIMITS_MILLIS[bucket]) {
+            bucket++;
+        }
+        return bucket;
+    }
+
+    private static double toMillis(long nanos) {
+        return nanos / 1_000_000d;
+    }
+
+}
@@ -0,0 +1,49 @@
+package com.github.jonasrutishauser.maven.wagon.git.metrics;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+/**
+ * Cumulated measurements of a phase for one remote repository.
+ */
+public interface PhaseStatisticsMXBean {
+
+    long getCount();
+
+    double getTotalTimeMillis();
+
+    double getMeanTimeMillis();
+
+    double getMaxTimeMillis();
+
+    long getBytes();
+
+    long getObjects();
+
+    long getRetries();
+
+    /**
+     * @return the upper (exclusive) limits of the latency histogram buckets (the last bucket has no limit)
+     */
+    long[] getLatencyBucketLimitsMillis();
+
+    /**
+     * @return the number of executions per latency bucket
+     */
+    long[] getLatencyHistogram();
+
+}
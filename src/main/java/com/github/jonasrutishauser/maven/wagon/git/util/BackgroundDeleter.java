@@ -0,0 +1,221 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Deletes directories in the background. A directory is first renamed to a trash directory next to it, so it is gone
+ * for the caller immediately, and then its files are deleted concurrently on a daemon thread. Before the JVM exits,
+ * pending deletions get a short time to complete. Trash directories left over (e.g. by a killed JVM) are deleted with
+ * the first deletion in the same parent directory, once they were not modified for a while (so the trash which another
+ * JVM is still deleting is left alone).
+ */
+public class BackgroundDeleter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(BackgroundDeleter.class);
+
+    private static final String TRASH_PREFIX = "wagon-git-trash-";
+
+    private static final Duration SHUTDOWN_TIMEOUT = Duration.ofSeconds(10);
+
+    static final Duration STALE_TRASH_AGE = Duration.ofHours(1);
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "wagon-git-deleter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ParallelProcessor processor;
+
+    private final Set<Path> sweptDirectories = ConcurrentHashMap.newKeySet();
+
+    private int pending;
+
+    BackgroundDeleter(int parallelism) {
+        processor = new ParallelProcessor(parallelism);
+    }
+
+    public static BackgroundDeleter getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Moves the directory (if it exists) out of the way and deletes it asynchronously.
+     */
+    public void delete(Path directory) {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        Path parent = directory.toAbsolutePath().getParent();
+        if (sweptDirectories.add(parent)) {
+            sweep(parent);
+        }
+        schedule(moveToTrash(directory));
+    }
+
+    /**
+     * Waits until all scheduled deletions are completed.
+     *
+     * @return <code>false</code> if the timeout elapsed before
+     */
+    public synchronized boolean awaitPending(Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (pending > 0) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return false;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, remaining);
+        }
+        return true;
+    }
+
+    private void sweep(Path parent) {
+        FileTime staleBefore = FileTime.from(Instant.now().minus(STALE_TRASH_AGE));
+        try (DirectoryStream<Path> trashes = Files.newDirectoryStream(parent, TRASH_PREFIX + '*')) {
+            for (Path trash : trashes) {
+                if (isModifiedBefore(trash, staleBefore)) {
+                    schedule(trash);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.debug("failed to look for left over trash in " + parent + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static boolean isModifiedBefore(Path trash, FileTime time) {
+        try {
+            return Files.getLastModifiedTime(trash).compareTo(time) < 0;
+        } catch (IOException e) {
+            // already deleted
+            return false;
+        }
+    }
+
+    /**
+     * Renames the directory to a trash directory, which is touched so it is not considered left over while it is
+     * deleted (the rename does not change the modification time).
+     */
+    private static Path moveToTrash(Path directory) {
+        try {
+            Path trash = Files.move(directory, directory.resolveSibling(TRASH_PREFIX + UUID.randomUUID()),
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.setLastModifiedTime(trash, FileTime.from(Instant.now()));
+            return trash;
+        } catch (IOException e) {
+            LOGGER.debug("failed to move " + directory + " to trash: " + e.getMessage(), e);
+            return directory;
+        }
+    }
+
+    private synchronized void schedule(Path directory) {
+        pending++;
+        executor.execute(() -> {
+            try {
+                deleteTree(directory);
+            } catch (IOException e) {
+                LOGGER.warn("failed to delete closed local repository: " + e.getMessage(), e);
+            } finally {
+                completed();
+            }
+        });
+    }
+
+    private synchronized void completed() {
+        pending--;
+        notifyAll();
+    }
+
+    /**
+     * Deletes the files concurrently and then the directories (deepest first). Files which are already gone (deleted
+     * by another process sweeping the same trash) are ignored.
+     */
+    private void deleteTree(Path directory) throws IOException {
+        List<Path> files = new ArrayList<>();
+        List<Path> directories = new ArrayList<>();
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>() {
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                files.add(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+                if (exc instanceof NoSuchFileException) {
+                    return FileVisitResult.CONTINUE;
+                }
+                throw exc;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                if (exc != null && !(exc instanceof NoSuchFileException)) {
+                    throw exc;
+                }
+                directories.add(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        processor.process(files, Files::deleteIfExists);
+        for (Path dir : directories) {
+            Files.deleteIfExists(dir);
+        }
+    }
+
+    private static class Holder {
+        private static final BackgroundDeleter INSTANCE = new BackgroundDeleter(
+                Runtime.getRuntime().availableProcessors());
+
+        static {
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    INSTANCE.awaitPending(SHUTDOWN_TIMEOUT);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "wagon-git-deleter-shutdown"));
+        }
+    }
+
+}
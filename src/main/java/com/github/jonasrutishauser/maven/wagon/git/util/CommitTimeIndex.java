@@ -0,0 +1,120 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.OptionalInt;
+import java.util.TreeMap;
+
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+
+/**
+ * Index of the last commit time of paths, populated lazily by a single history walk. The walk only continues as long
+ * as the requested path is not yet known, and all paths changed by the visited commits are remembered for later
+ * lookups.
+ */
+public class CommitTimeIndex implements AutoCloseable {
+
+    private final RevWalk walk;
+
+    private final NavigableMap<String, Integer> commitTimes = new TreeMap<>();
+
+    private boolean exhausted;
+
+    public CommitTimeIndex(Repository repository, AnyObjectId start) throws IOException {
+        walk = new RevWalk(repository);
+        walk.markStart(walk.parseCommit(start));
+    }
+
+    /**
+     * @param path
+     *            path of a file or directory in the repository (<code>.</code> for the root)
+     * @return the time of the last commit which changed the path or anything below it (empty if the history does not
+     *         contain a change of the path)
+     */
+    public OptionalInt getCommitTime(String path) throws IOException {
+        OptionalInt commitTime = lookup(path);
+        while (!commitTime.isPresent() && !exhausted) {
+            RevCommit commit = walk.next();
+            if (commit == null) {
+                exhausted = true;
+            } else {
+                index(commit);
+                commitTime = lookup(path);
+            }
+        }
+        return commitTime;
+    }
+
+    @Override
+    public void close() {
+        walk.close();
+    }
+
+    private OptionalInt lookup(String path) {
+        Map<String, Integer> within = ".".equals(path) ? commitTimes
+                : commitTimes.subMap(path + '/', path + (char) ('/' + 1));
+        Integer exact = commitTimes.get(path);
+        int commitTime = exact == null ? Integer.MIN_VALUE : exact.intValue();
+        for (Integer time : within.values()) {
+            commitTime = Math.max(commitTime, time.intValue());
+        }
+        return commitTime == Integer.MIN_VALUE ? OptionalInt.empty() : OptionalInt.of(commitTime);
+    }
+
+    /**
+     * Records all paths which differ from every parent (or which exist in a root commit).
+     */
+    private void index(RevCommit commit) throws IOException {
+        Integer commitTime = Integer.valueOf(commit.getCommitTime());
+        try (TreeWalk treeWalk = new TreeWalk(walk.getObjectReader())) {
+            treeWalk.addTree(commit.getTree());
+            if (commit.getParentCount() == 0) {
+                treeWalk.addTree(new EmptyTreeIterator());
+            }
+            for (RevCommit parent : commit.getParents()) {
+                treeWalk.addTree(walk.parseCommit(parent).getTree());
+            }
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            while (treeWalk.next()) {
+                if (differsFromAllParents(treeWalk)) {
+                    commitTimes.putIfAbsent(treeWalk.getPathString(), commitTime);
+                }
+            }
+        }
+    }
+
+    private static boolean differsFromAllParents(TreeWalk treeWalk) {
+        for (int parent = 1; parent < treeWalk.getTreeCount(); parent++) {
+            if (treeWalk.idEqual(0, parent)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
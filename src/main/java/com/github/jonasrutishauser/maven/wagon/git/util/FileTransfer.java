@@ -0,0 +1,110 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Strategies to transfer a file to another location, ordered from the cheapest to the most compatible one. A strategy
+ * which is not applicable falls back to the next one.
+ */
+public enum FileTransfer {
+
+    /**
+     * Creates a hard link, if source and target are on the same file store. Must only be used if the source is never
+     * modified in place, as the target shares its content.
+     */
+    LINK {
+        @Override
+        boolean tryTransfer(Path source, Path target, boolean preserveAttributes) throws IOException {
+            if (!Files.getFileStore(source).equals(Files.getFileStore(target.toAbsolutePath().getParent()))) {
+                return false;
+            }
+            try {
+                Files.createLink(target, source);
+            } catch (UnsupportedOperationException | FileSystemException e) {
+                return false;
+            }
+            return true;
+        }
+    },
+
+    /**
+     * Copies the content with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}, which
+     * lets the operating system copy without passing the data through the JVM.
+     */
+    CHANNEL {
+        @Override
+        boolean tryTransfer(Path source, Path target, boolean preserveAttributes) throws IOException {
+            try (FileChannel in = FileChannel.open(source, READ);
+                    FileChannel out = FileChannel.open(target, CREATE_NEW, WRITE)) {
+                long size = in.size();
+                for (long position = 0; position < size;) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            }
+            if (preserveAttributes) {
+                Files.setLastModifiedTime(target, Files.getLastModifiedTime(source));
+            }
+            return true;
+        }
+    },
+
+    /**
+     * Copies the file with {@link Files#copy(Path, Path, java.nio.file.CopyOption...)}.
+     */
+    COPY {
+        @Override
+        boolean tryTransfer(Path source, Path target, boolean preserveAttributes) throws IOException {
+            if (preserveAttributes) {
+                Files.copy(source, target, StandardCopyOption.COPY_ATTRIBUTES);
+            } else {
+                Files.copy(source, target);
+            }
+            return true;
+        }
+    };
+
+    /**
+     * Transfers the source file to the target with this strategy (or a fallback). An existing target is deleted first
+     * instead of being overwritten, as it may be a hard link to another file.
+     *
+     * @param preserveAttributes
+     *            whether the last modified time of the source is kept
+     */
+    public void transfer(Path source, Path target, boolean preserveAttributes) throws IOException {
+        Files.deleteIfExists(target);
+        FileTransfer[] strategies = values();
+        int strategy = ordinal();
+        while (!strategies[strategy].tryTransfer(source, target, preserveAttributes)) {
+            strategy++;
+        }
+    }
+
+    abstract boolean tryTransfer(Path source, Path target, boolean preserveAttributes) throws IOException;
+
+}
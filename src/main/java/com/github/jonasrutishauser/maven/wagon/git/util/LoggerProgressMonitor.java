@@ -17,52 +17,164 @@ package com.github.jonasrutishauser.maven.wagon.git.util;
  * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
  */
 
-import org.eclipse.jgit.lib.BatchingProgressMonitor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import org.eclipse.jgit.lib.ProgressMonitor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class LoggerProgressMonitor extends BatchingProgressMonitor {
+/**
+ * Logs the progress of JGit tasks at debug level with the throughput (objects/s and, if a byte counter is given,
+ * bytes/s) and the estimated remaining time. A task is logged at most once per interval and once when it ends. While
+ * debug logging is disabled, updates neither compute nor allocate anything.
+ */
+public class LoggerProgressMonitor implements ProgressMonitor {
+
+    static final long INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private static final int TASK_WIDTH = 24;
+
+    private static final String[] BYTE_UNITS = {"B", "KiB", "MiB", "GiB", "TiB"};
 
     private final Logger logger;
 
+    private final LongSupplier nanoClock;
+
+    private final LongSupplier byteCounter;
+
+    private final StringBuilder message = new StringBuilder(128);
+
+    /**
+     * The current task (<code>null</code> if it is not logged).
+     */
+    private String task;
+
+    private int totalWork;
+
+    private long work;
+
+    private long startNanos;
+
+    private long startBytes;
+
+    private long nextLogNanos;
+
     public LoggerProgressMonitor() {
-        this(LoggerFactory.getLogger(LoggerProgressMonitor.class));
+        this(null);
+    }
+
+    /**
+     * @param byteCounter
+     *            supplies the total number of bytes transferred so far (<code>null</code> if unknown)
+     */
+    public LoggerProgressMonitor(LongSupplier byteCounter) {
+        this(LoggerFactory.getLogger(LoggerProgressMonitor.class), System::nanoTime, byteCounter);
     }
 
-    LoggerProgressMonitor(Logger logger) {
+    LoggerProgressMonitor(Logger logger, LongSupplier nanoClock, LongSupplier byteCounter) {
         this.logger = logger;
+        this.nanoClock = nanoClock;
+        this.byteCounter = byteCounter;
     }
 
     @Override
-    protected void onUpdate(String taskName, int workCurr) {
-        if (logger.isDebugEnabled()) {
-            logger.debug(String.format("%-24s%s", taskName + ": ", Integer.valueOf(workCurr)));
+    public void start(int totalTasks) {
+        // every task is logged on its own
+    }
+
+    @Override
+    public void beginTask(String title, int totalWork) {
+        if (!logger.isDebugEnabled()) {
+            task = null;
+            return;
         }
+        task = title;
+        this.totalWork = totalWork;
+        work = 0;
+        startNanos = nanoClock.getAsLong();
+        startBytes = byteCounter == null ? 0 : byteCounter.getAsLong();
+        nextLogNanos = startNanos + INTERVAL_NANOS;
     }
 
     @Override
-    protected void onEndTask(String taskName, int workCurr) {
-        if (logger.isDebugEnabled()) {
-            logger.debug(String.format("%-24s%s", taskName + ": ", Integer.valueOf(workCurr)));
+    public void update(int completed) {
+        if (task == null) {
+            return;
+        }
+        work += completed;
+        long now = nanoClock.getAsLong();
+        if (now - nextLogNanos >= 0) {
+            nextLogNanos = now + INTERVAL_NANOS;
+            log(now, false);
         }
     }
 
     @Override
-    protected void onUpdate(String taskName, int workCurr, int workTotal, int percentDone) {
-        if (logger.isDebugEnabled() && workCurr != workTotal) {
-            String total = String.valueOf(workTotal);
-            logger.debug(String.format("%-24s%3s%% (%" + total.length() + "s/%s)", taskName + ": ",
-                    Integer.valueOf(percentDone), Integer.valueOf(workCurr), total));
+    public void endTask() {
+        if (task != null) {
+            log(nanoClock.getAsLong(), true);
+            task = null;
         }
     }
 
     @Override
-    protected void onEndTask(String taskName, int workCurr, int workTotal, int percentDone) {
-        if (logger.isDebugEnabled()) {
-            String total = String.valueOf(workTotal);
-            logger.debug(String.format("%-24s%3s%% (%" + total.length() + "s/%s)", taskName + ": ",
-                    Integer.valueOf(percentDone), Integer.valueOf(workCurr), total));
+    public boolean isCancelled() {
+        return false;
+    }
+
+    @Override
+    public void showDuration(boolean enabled) {
+        // the duration is always part of the throughput
+    }
+
+    private void log(long now, boolean done) {
+        long elapsedNanos = Math.max(now - startNanos, 1);
+        message.setLength(0);
+        message.append(task).append(": ");
+        while (message.length() < TASK_WIDTH) {
+            message.append(' ');
         }
+        if (totalWork == UNKNOWN) {
+            message.append(work);
+        } else {
+            message.append(totalWork == 0 ? 100 : work * 100 / totalWork).append("% (").append(work).append('/')
+                    .append(totalWork).append(')');
+        }
+        message.append(", ").append(work * TimeUnit.SECONDS.toNanos(1) / elapsedNanos).append(" objects/s");
+        if (byteCounter != null) {
+            long bytes = byteCounter.getAsLong() - startBytes;
+            if (bytes > 0) {
+                message.append(", ");
+                appendBytes((long) (bytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos));
+                message.append("/s");
+            }
+        }
+        if (done) {
+            message.append(", ");
+            appendTenths(elapsedNanos / TimeUnit.MILLISECONDS.toNanos(100));
+            message.append(" s");
+        } else if (totalWork != UNKNOWN && work > 0 && work < totalWork) {
+            message.append(", ETA ");
+            appendTenths(elapsedNanos / work * (totalWork - work) / TimeUnit.MILLISECONDS.toNanos(100));
+            message.append(" s");
+        }
+        logger.debug(message.toString());
+    }
+
+    private void appendBytes(long bytes) {
+        int unit = 0;
+        long tenths = bytes * 10;
+        while (unit < BYTE_UNITS.length - 1 && tenths >= 10240) {
+            tenths /= 1024;
+            unit++;
+        }
+        appendTenths(tenths);
+        message.append(' ').append(BYTE_UNITS[unit]);
+    }
+
+    private void appendTenths(long tenths) {
+        message.append(tenths / 10).append('.').append(tenths % 10);
     }
 
 }
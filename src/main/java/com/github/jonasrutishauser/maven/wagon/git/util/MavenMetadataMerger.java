@@ -0,0 +1,218 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Clock;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+import java.util.function.Function;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.xml.sax.SAXException;
+
+/**
+ * Three-way merge of two versions of a <code>maven-metadata.xml</code> which were written concurrently. The document
+ * with the newer <code>lastUpdated</code> wins for single values (like <code>latest</code> or <code>release</code>),
+ * the lists of versions, snapshot versions and plugins are merged (entries removed on one side relative to the base
+ * stay removed) and <code>lastUpdated</code> is set to the current time.
+ */
+public class MavenMetadataMerger {
+
+    public static final String FILE_NAME = "maven-metadata.xml";
+
+    private static final DateTimeFormatter TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMddHHmmss")
+            .withZone(ZoneOffset.UTC);
+
+    private final Clock clock;
+
+    public MavenMetadataMerger() {
+        this(Clock.systemUTC());
+    }
+
+    MavenMetadataMerger(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * @param base
+     *            the common ancestor (empty if both sides created the file)
+     * @return the merged document
+     * @throws IOException
+     *             if one of the documents is not well-formed
+     */
+    public byte[] merge(Optional<byte[]> base, byte[] ours, byte[] theirs) throws IOException {
+        Document oursDocument = parse(ours);
+        Document theirsDocument = parse(theirs);
+        Optional<Document> baseDocument = base.isPresent() ? Optional.of(parse(base.get())) : Optional.empty();
+        boolean oursNewer = lastUpdated(oursDocument).compareTo(lastUpdated(theirsDocument)) >= 0;
+        Document result = oursNewer ? oursDocument : theirsDocument;
+        Document other = oursNewer ? theirsDocument : oursDocument;
+        mergeEntries(result, other, baseDocument, "versioning/versions", "version",
+                entry -> entry.getTextContent().trim(), (first, second) -> first);
+        mergeEntries(result, other, baseDocument, "versioning/snapshotVersions", "snapshotVersion",
+                entry -> childText(entry, "classifier") + ':' + childText(entry, "extension"),
+                (first, second) -> childText(second, "updated").compareTo(childText(first, "updated")) > 0 ? second
+                        : first);
+        mergeEntries(result, other, baseDocument, "plugins", "plugin", entry -> childText(entry, "prefix"),
+                (first, second) -> first);
+        getOrCreate(result, "versioning/lastUpdated").setTextContent(TIMESTAMP.format(clock.instant()));
+        return serialize(result);
+    }
+
+    /**
+     * Adds the entries of the other document to the result (or replaces the entries of the result if the other one is
+     * selected). Entries of the base which are missing in one of the documents are removed.
+     */
+    private static void mergeEntries(Document result, Document other, Optional<Document> base, String container,
+            String name, Function<Element, String> key, BinaryOperator<Element> select) {
+        Map<String, Element> resultEntries = entries(result, container, name, key);
+        Map<String, Element> otherEntries = entries(other, container, name, key);
+        Set<String> baseKeys = base.map(document -> entries(document, container, name, key).keySet())
+                .orElse(Collections.emptySet());
+        for (Map.Entry<String, Element> otherEntry : otherEntries.entrySet()) {
+            Element resultEntry = resultEntries.get(otherEntry.getKey());
+            if (resultEntry == null) {
+                if (!baseKeys.contains(otherEntry.getKey())) {
+                    getOrCreate(result, container).appendChild(result.importNode(otherEntry.getValue(), true));
+                }
+            } else if (select.apply(resultEntry, otherEntry.getValue()) != resultEntry) {
+                resultEntry.getParentNode().replaceChild(result.importNode(otherEntry.getValue(), true),
+                        resultEntry);
+            }
+        }
+        for (Map.Entry<String, Element> resultEntry : resultEntries.entrySet()) {
+            if (!otherEntries.containsKey(resultEntry.getKey()) && baseKeys.contains(resultEntry.getKey())) {
+                resultEntry.getValue().getParentNode().removeChild(resultEntry.getValue());
+            }
+        }
+    }
+
+    private static Map<String, Element> entries(Document document, String container, String name,
+            Function<Element, String> key) {
+        Map<String, Element> entries = new LinkedHashMap<>();
+        Element parent = document.getDocumentElement();
+        for (String element : container.split("/")) {
+            parent = parent == null ? null : child(parent, element);
+        }
+        if (parent != null) {
+            for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+                if (node instanceof Element && name.equals(node.getNodeName())) {
+                    entries.putIfAbsent(key.apply((Element) node), (Element) node);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private static String lastUpdated(Document document) {
+        Element versioning = child(document.getDocumentElement(), "versioning");
+        return versioning == null ? "" : childText(versioning, "lastUpdated");
+    }
+
+    private static Element getOrCreate(Document document, String path) {
+        Element parent = document.getDocumentElement();
+        for (String name : path.split("/")) {
+            Element element = child(parent, name);
+            if (element == null) {
+                element = document.createElement(name);
+                parent.appendChild(element);
+            }
+            parent = element;
+        }
+        return parent;
+    }
+
+    private static String childText(Element parent, String name) {
+        Element child = child(parent, name);
+        return child == null ? "" : child.getTextContent().trim();
+    }
+
+    private static Element child(Element parent, String name) {
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && name.equals(node.getNodeName())) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    private static Document parse(byte[] content) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(content));
+            removeWhitespace(document.getDocumentElement());
+            return document;
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("invalid " + FILE_NAME + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static void removeWhitespace(Element element) {
+        Node node = element.getFirstChild();
+        while (node != null) {
+            Node next = node.getNextSibling();
+            if (node instanceof Element) {
+                removeWhitespace((Element) node);
+            } else if (node.getNodeType() == Node.TEXT_NODE && node.getTextContent().trim().isEmpty()) {
+                element.removeChild(node);
+            }
+            node = next;
+        }
+    }
+
+    private static byte[] serialize(Document document) throws IOException {
+        try {
+            TransformerFactory factory = TransformerFactory.newInstance();
+            factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+            Transformer transformer = factory.newTransformer();
+            transformer.setOutputProperty(OutputKeys.ENCODING, "UTF-8");
+            transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+            transformer.setOutputProperty("{http://xml.apache.org/xslt}indent-amount", "2");
+            document.setXmlStandalone(true);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            transformer.transform(new DOMSource(document), new StreamResult(out));
+            return out.toByteArray();
+        } catch (TransformerException e) {
+            throw new IOException("failed to write " + FILE_NAME + ": " + e.getMessage(), e);
+        }
+    }
+
+}
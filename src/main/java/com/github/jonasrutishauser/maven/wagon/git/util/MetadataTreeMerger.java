@@ -0,0 +1,187 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEditor;
+import org.eclipse.jgit.dircache.DirCacheEditor.PathEdit;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.AnyObjectId;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.PathSuffixFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.eclipse.jgit.util.Hex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Merges the <code>maven-metadata.xml</code> files of two trees with a common base (see {@link MavenMetadataMerger})
+ * and regenerates their checksums, so that concurrent deploys of the same artifact do not conflict.
+ */
+public class MetadataTreeMerger {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetadataTreeMerger.class);
+
+    private static final Map<String, String> CHECKSUM_ALGORITHMS = new LinkedHashMap<>();
+
+    static {
+        CHECKSUM_ALGORITHMS.put("md5", "MD5");
+        CHECKSUM_ALGORITHMS.put("sha1", "SHA-1");
+        CHECKSUM_ALGORITHMS.put("sha256", "SHA-256");
+        CHECKSUM_ALGORITHMS.put("sha512", "SHA-512");
+    }
+
+    private final ObjectReader reader;
+
+    private final ObjectInserter inserter;
+
+    public MetadataTreeMerger(ObjectReader reader, ObjectInserter inserter) {
+        this.reader = reader;
+        this.inserter = inserter;
+    }
+
+    /**
+     * @return the blobs of all files which were changed on both sides (which are read by the merge)
+     */
+    public List<ObjectId> changedOnBothSides(AnyObjectId base, AnyObjectId head, AnyObjectId remote)
+            throws IOException {
+        List<ObjectId> blobs = new ArrayList<>();
+        try (TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(base);
+            treeWalk.addTree(head);
+            treeWalk.addTree(remote);
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(TreeFilter.ANY_DIFF);
+            while (treeWalk.next()) {
+                if (changedOnBothSides(treeWalk)) {
+                    for (int i = 0; i < treeWalk.getTreeCount(); i++) {
+                        if (treeWalk.getFileMode(i).getObjectType() == Constants.OBJ_BLOB) {
+                            blobs.add(treeWalk.getObjectId(i));
+                        }
+                    }
+                }
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * Merges the <code>maven-metadata.xml</code> files which were changed on both sides and regenerates the checksums
+     * which exist on either side.
+     *
+     * @return the merged blobs (by path) to use on both sides
+     */
+    public Map<String, ObjectId> merge(AnyObjectId base, AnyObjectId head, AnyObjectId remote) throws IOException {
+        Map<String, ObjectId> blobs = new LinkedHashMap<>();
+        try (TreeWalk treeWalk = new TreeWalk(reader)) {
+            treeWalk.addTree(base);
+            treeWalk.addTree(head);
+            treeWalk.addTree(remote);
+            treeWalk.setRecursive(true);
+            treeWalk.setFilter(AndTreeFilter.create(PathSuffixFilter.create(MavenMetadataMerger.FILE_NAME),
+                    TreeFilter.ANY_DIFF));
+            while (treeWalk.next()) {
+                if (!MavenMetadataMerger.FILE_NAME.equals(treeWalk.getNameString())
+                        || !changedOnBothSides(treeWalk)) {
+                    continue;
+                }
+                String path = treeWalk.getPathString();
+                LOGGER.info("merging concurrent changes of " + path);
+                Optional<byte[]> baseContent = treeWalk.getRawMode(0) == 0 ? Optional.empty()
+                        : Optional.of(reader.open(treeWalk.getObjectId(0), Constants.OBJ_BLOB).getBytes());
+                byte[] content = new MavenMetadataMerger().merge(baseContent,
+                        reader.open(treeWalk.getObjectId(1), Constants.OBJ_BLOB).getBytes(),
+                        reader.open(treeWalk.getObjectId(2), Constants.OBJ_BLOB).getBytes());
+                blobs.put(path, inserter.insert(Constants.OBJ_BLOB, content));
+                for (Map.Entry<String, String> checksum : CHECKSUM_ALGORITHMS.entrySet()) {
+                    String checksumPath = path + '.' + checksum.getKey();
+                    if (exists(checksumPath, head) || exists(checksumPath, remote)) {
+                        blobs.put(checksumPath, inserter.insert(Constants.OBJ_BLOB,
+                                checksum(checksum.getValue(), content).getBytes(StandardCharsets.US_ASCII)));
+                    }
+                }
+            }
+        }
+        return blobs;
+    }
+
+    /**
+     * @return the tree with the given blobs (by path) replaced
+     */
+    public ObjectId withBlobs(AnyObjectId tree, Map<String, ObjectId> blobs) throws IOException {
+        if (blobs.isEmpty()) {
+            return tree.copy();
+        }
+        DirCache index = DirCache.newInCore();
+        DirCacheBuilder builder = index.builder();
+        builder.addTree(new byte[0], DirCacheEntry.STAGE_0, reader, tree);
+        builder.finish();
+        DirCacheEditor editor = index.editor();
+        for (Map.Entry<String, ObjectId> blob : blobs.entrySet()) {
+            long length = reader.getObjectSize(blob.getValue(), Constants.OBJ_BLOB);
+            editor.add(new PathEdit(blob.getKey()) {
+
+                @Override
+                public void apply(DirCacheEntry entry) {
+                    entry.setFileMode(FileMode.REGULAR_FILE);
+                    entry.setObjectId(blob.getValue());
+                    entry.setLength(length);
+                }
+            });
+        }
+        editor.finish();
+        return index.writeTree(inserter);
+    }
+
+    private static boolean changedOnBothSides(TreeWalk treeWalk) {
+        return treeWalk.getRawMode(1) != 0 && treeWalk.getRawMode(2) != 0 && !treeWalk.idEqual(0, 1)
+                && !treeWalk.idEqual(0, 2) && !treeWalk.idEqual(1, 2);
+    }
+
+    private boolean exists(String path, AnyObjectId tree) throws IOException {
+        try (TreeWalk treeWalk = TreeWalk.forPath(reader, path, tree)) {
+            return treeWalk != null;
+        }
+    }
+
+    private static String checksum(String algorithm, byte[] content) throws IOException {
+        try {
+            return Hex.toHexString(MessageDigest.getInstance(algorithm).digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+}
@@ -0,0 +1,105 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes items concurrently with a bounded number of threads.
+ */
+public class ParallelProcessor {
+
+    @FunctionalInterface
+    public interface Task<S, T> {
+        T apply(S item) throws IOException;
+    }
+
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    private final int parallelism;
+
+    public ParallelProcessor(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Applies the task to all items. If tasks fail, the exception of the first failed item (in the order of the
+     * items) is thrown, with the exceptions of the other failed items added as suppressed.
+     *
+     * @return the results in the order of the items
+     */
+    public <S, T> List<T> process(List<S> items, Task<S, T> task) throws IOException {
+        if (parallelism <= 1 || items.size() <= 1) {
+            List<T> results = new ArrayList<>(items.size());
+            for (S item : items) {
+                results.add(task.apply(item));
+            }
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, items.size()), runnable -> {
+            Thread thread = new Thread(runnable, "wagon-git-" + THREAD_NUMBER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<T>> futures = new ArrayList<>(items.size());
+            for (S item : items) {
+                futures.add(executor.submit(() -> task.apply(item)));
+            }
+            return getResults(futures);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static <T> List<T> getResults(List<Future<T>> futures) throws IOException {
+        List<T> results = new ArrayList<>(futures.size());
+        IOException failure = null;
+        for (Future<T> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                InterruptedIOException interrupted = new InterruptedIOException("interrupted");
+                interrupted.initCause(e);
+                throw interrupted;
+            } catch (ExecutionException e) {
+                IOException cause = e.getCause() instanceof IOException ? (IOException) e.getCause()
+                        : new IOException(e.getCause());
+                if (failure == null) {
+                    failure = cause;
+                } else {
+                    failure.addSuppressed(cause);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+        return results;
+    }
+
+}
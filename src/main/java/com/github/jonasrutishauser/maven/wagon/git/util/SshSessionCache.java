@@ -0,0 +1,178 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jgit.api.TransportConfigCallback;
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FtpChannel;
+import org.eclipse.jgit.transport.RemoteSession;
+import org.eclipse.jgit.transport.RemoteSession2;
+import org.eclipse.jgit.transport.SshSessionFactory;
+import org.eclipse.jgit.transport.SshTransport;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.util.FS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps one authenticated SSH session per remote host, so the ls-remote, fetch and push operations of a connection
+ * each open a channel on the same session instead of doing a handshake and key exchange of their own. The sessions
+ * are disconnected when the cache is closed. A reused session which fails to open a channel (e.g. because the server
+ * closed it in the meantime) is replaced once.
+ */
+public class SshSessionCache extends SshSessionFactory implements TransportConfigCallback, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SshSessionCache.class);
+
+    private final SshSessionFactory delegate;
+
+    private final Map<String, CachedSession> sessions = new LinkedHashMap<>();
+
+    public SshSessionCache() {
+        this(SshSessionFactory.getInstance());
+    }
+
+    SshSessionCache(SshSessionFactory delegate) {
+        this.delegate = delegate;
+    }
+
+    /**
+     * Lets an SSH transport take its sessions from this cache.
+     */
+    @Override
+    public void configure(Transport transport) {
+        if (delegate != null && transport instanceof SshTransport) {
+            ((SshTransport) transport).setSshSessionFactory(this);
+        }
+    }
+
+    @Override
+    public synchronized RemoteSession getSession(URIish uri, CredentialsProvider credentialsProvider, FS fs, int tms)
+            throws TransportException {
+        String key = uri.getUser() + '@' + uri.getHost() + ':' + uri.getPort();
+        CachedSession session = sessions.get(key);
+        if (session == null) {
+            session = new CachedSession(uri, credentialsProvider, fs, tms);
+            sessions.put(key, session);
+        } else {
+            LOGGER.debug("reusing ssh session to " + uri.getHost());
+        }
+        return session;
+    }
+
+    @Override
+    public String getType() {
+        return delegate.getType();
+    }
+
+    /**
+     * Keeps the session open for the next operation.
+     */
+    @Override
+    public void releaseSession(RemoteSession session) {
+        // disconnected on close
+    }
+
+    @Override
+    public synchronized void close() {
+        for (CachedSession session : sessions.values()) {
+            session.close();
+        }
+        sessions.clear();
+    }
+
+    private final class CachedSession implements RemoteSession2 {
+
+        private final URIish uri;
+
+        private final CredentialsProvider credentialsProvider;
+
+        private final FS fs;
+
+        private final int tms;
+
+        private RemoteSession session;
+
+        private boolean used;
+
+        CachedSession(URIish uri, CredentialsProvider credentialsProvider, FS fs, int tms) throws TransportException {
+            this.uri = uri;
+            this.credentialsProvider = credentialsProvider;
+            this.fs = fs;
+            this.tms = tms;
+            session = delegate.getSession(uri, credentialsProvider, fs, tms);
+        }
+
+        @Override
+        public Process exec(String commandName, int timeout) throws IOException {
+            return exec(commandName, null, timeout);
+        }
+
+        @Override
+        public synchronized Process exec(String commandName, Map<String, String> environment, int timeout)
+                throws IOException {
+            try {
+                Process process = exec(session, commandName, environment, timeout);
+                used = true;
+                return process;
+            } catch (IOException e) {
+                if (!used) {
+                    throw e;
+                }
+                LOGGER.debug("reconnecting ssh session to " + uri.getHost() + ": " + e.getMessage(), e);
+                delegate.releaseSession(session);
+                session = delegate.getSession(uri, credentialsProvider, fs, tms);
+                return exec(session, commandName, environment, timeout);
+            }
+        }
+
+        private Process exec(RemoteSession target, String commandName, Map<String, String> environment, int timeout)
+                throws IOException {
+            if (environment != null && !environment.isEmpty() && target instanceof RemoteSession2) {
+                return ((RemoteSession2) target).exec(commandName, environment, timeout);
+            }
+            return target.exec(commandName, timeout);
+        }
+
+        @Override
+        public synchronized FtpChannel getFtpChannel() {
+            return session.getFtpChannel();
+        }
+
+        /**
+         * Called by transports which do not use the session factory to release the session; the session is kept
+         * open for the next operation.
+         */
+        @Override
+        public void disconnect() {
+            // disconnected on close
+        }
+
+        synchronized void close() {
+            delegate.releaseSession(session);
+        }
+
+    }
+
+}
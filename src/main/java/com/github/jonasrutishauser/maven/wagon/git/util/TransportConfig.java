@@ -0,0 +1,73 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import java.util.Optional;
+import java.util.OptionalInt;
+
+import org.eclipse.jgit.api.TransportConfigCallback;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.TransportHttp;
+
+/**
+ * Configures the transports of one connection: SSH transports reuse the sessions of an {@link SshSessionCache}, and
+ * HTTPS transports with known credentials send them with the first request. Without that, every ls-remote, fetch and
+ * push is first rejected with 401, and JGit does not read the body of that response, so the JDK cannot keep the
+ * connection alive and the retry does a new TLS handshake.
+ */
+public class TransportConfig implements TransportConfigCallback, AutoCloseable {
+
+    private final SshSessionCache sshSessions;
+
+    private final Optional<String> username;
+
+    private final Optional<String> password;
+
+    private final OptionalInt timeout;
+
+    /**
+     * @param timeout
+     *            timeout in seconds of every transport (empty for the default of JGit)
+     */
+    public TransportConfig(SshSessionCache sshSessions, Optional<String> username, Optional<String> password,
+            OptionalInt timeout) {
+        this.sshSessions = sshSessions;
+        this.username = username;
+        this.password = password;
+        this.timeout = timeout;
+    }
+
+    @Override
+    public void configure(Transport transport) {
+        sshSessions.configure(transport);
+        timeout.ifPresent(transport::setTimeout);
+        if (transport instanceof TransportHttp && "https".equals(transport.getURI().getScheme())
+                && username.isPresent() && password.isPresent()) {
+            ((TransportHttp) transport).setPreemptiveBasicAuthentication(username.get(), password.get());
+        }
+    }
+
+    /**
+     * Disconnects the SSH sessions.
+     */
+    @Override
+    public void close() {
+        sshSessions.close();
+    }
+
+}
@@ -28,8 +28,12 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.stream.Stream;
 
 import org.junit.jupiter.api.DisplayName;
@@ -39,8 +43,11 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.ArgumentsProvider;
 import org.junit.jupiter.params.provider.ArgumentsSource;
+import org.junit.jupiter.params.provider.CsvSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
+import com.github.jonasrutishauser.maven.wagon.git.util.FileTransfer;
+
 @DisplayName("GitConfiguration")
 public class GitConfigurationTest {
 
@@ -121,6 +128,202 @@ public class GitConfigurationTest {
         assertThrows(IllegalArgumentException.class, () -> GitConfiguration.parse(url));
     }
 
+    @DisplayName("parse() with options")
+    @ParameterizedTest(name = "{0}")
+    @ValueSource(strings = {"git:file:/repos/test!?foo=bar&cache", "git:file:/repos/test!master!?foo=bar&cache",
+            "git:file:/repos/test!master!/snapshot?foo=bar&cache", "git:file:/repos/test!snapshot/?foo=bar&cache"})
+    void parse_withOptions(String url) {
+        GitConfiguration configuration = GitConfiguration.parse(url);
+
+        assertAll(() -> assertEquals("file:/repos/test", configuration.getUrl()),
+                () -> assertEquals("bar", configuration.getOptions().get("foo")),
+                () -> assertEquals("true", configuration.getOptions().get("cache")));
+    }
+
+    @DisplayName("getCacheDirectory()")
+    @ParameterizedTest(name = "{0} => {1}")
+    @CsvSource({"git:foo,", "git:foo!?cache=false,", "git:foo!?cache=/tmp/mirrors,/tmp/mirrors"})
+    void getCacheDirectory(String url, String cacheDirectory) {
+        GitConfiguration testee = GitConfiguration.parse(url);
+
+        assertEquals(Optional.ofNullable(cacheDirectory).map(Paths::get), testee.getCacheDirectory());
+    }
+
+    @Test
+    @DisplayName("getCacheDirectory() defaults to ~/.m2/wagon-git")
+    void getCacheDirectory_default() {
+        GitConfiguration testee = GitConfiguration.parse("git:foo!?cache");
+
+        assertEquals(Optional.of(Paths.get(System.getProperty("user.home"), ".m2", "wagon-git")),
+                testee.getCacheDirectory());
+    }
+
+    @DisplayName("getDepth()")
+    @ParameterizedTest(name = "{0} => {1}")
+    @CsvSource({"git:foo,", "git:foo!?depth=false,", "git:foo!?depth,1", "git:foo!?depth=42,42"})
+    void getDepth(String url, Integer depth) {
+        GitConfiguration testee = GitConfiguration.parse(url);
+
+        assertEquals(depth == null ? OptionalInt.empty() : OptionalInt.of(depth.intValue()), testee.getDepth());
+    }
+
+    @Test
+    @DisplayName("getDepth() with an invalid number throws IllegalArgumentException")
+    void getDepth_invalid() {
+        GitConfiguration testee = GitConfiguration.parse("git:foo!?depth=foo");
+
+        assertThrows(IllegalArgumentException.class, testee::getDepth);
+    }
+
+    @DisplayName("isSparse()")
+    @ParameterizedTest(name = "{0} => {1}")
+    @CsvSource({"git:foo,false", "git:foo!?sparse=false,false", "git:foo!?sparse,true", "git:foo!bar?sparse,true"})
+    void isSparse(String url, boolean sparse) {
+        GitConfiguration testee = GitConfiguration.parse(url);
+
+        assertEquals(sparse, testee.isSparse());
+    }
+
+    @DisplayName("isBare()")
+    @ParameterizedTest(name = "{0} => {1}")
+    @CsvSource({"git:foo,false", "git:foo!?bare=false,false", "git:foo!?bare,true", "git:foo!bar?sparse&bare,true"})
+    void isBare(String url, boolean bare) {
+        GitConfiguration testee = GitConfiguration.parse(url);
+
+        assertEquals(bare, testee.isBare());
+    }
+
+    @DisplayName("isPartial()")
+    @ParameterizedTest(name = "{0} => {1}")
+    @CsvSource({"git:foo,false", "git:foo!?partial=false,false", "git:foo!?partial,true",
+            "git:foo!bar?cache&partial,true"})
+    void isPartial(String url, boolean partial) {
+        GitConfiguration testee = GitConfiguration.parse(url);
+
+        assertEquals(partial, testee.isPartial());
+    }
+
+    @DisplayName("getBatchSize()")
+    @ParameterizedTest(name = "{0} => {1}")
+    @CsvSource({"git:foo,", "git:foo!?batch,1", "git:foo!?batch=100,100"})
+    void getBatchSize(String url, Integer batchSize) {
+        GitConfiguration testee = GitConfiguration.parse(url);
+
+        assertEquals(batchSize == null ? OptionalInt.empty() : OptionalInt.of(batchSize.intValue()),
+                testee.getBatchSize());
+    }
+
+    @DisplayName("getParallelism()")
+    @ParameterizedTest(name = "{0} => {1}")
+    @CsvSource({"git:foo,", "git:foo!?parallelism=1,1", "git:foo!?parallelism=8,8"})
+    void getParallelism(String url, Integer parallelism) {
+        GitConfiguration testee = GitConfiguration.parse(url);
+
+        assertEquals(parallelism == null ? OptionalInt.empty() : OptionalInt.of(parallelism.intValue()),
+                testee.getParallelism());
+    }
+
+    @DisplayName("getTransfer()")
+    @ParameterizedTest(name = "{0} => {1}")
+    @CsvSource({"git:foo,", "git:foo!?transfer=link,LINK", "git:foo!?transfer=channel,CHANNEL",
+            "git:foo!?transfer=COPY,COPY"})
+    void getTransfer(String url, FileTransfer transfer) {
+        GitConfiguration testee = GitConfiguration.parse(url);
+
+        assertEquals(Optional.ofNullable(transfer), testee.getTransfer());
+    }
+
+    @DisplayName("isPooled()")
+    @ParameterizedTest(name = "{0} => {1}")
+    @CsvSource({"git:foo,false", "git:foo!?pool,true", "git:foo!?pool=false,false"})
+    void isPooled(String url, boolean pooled) {
+        GitConfiguration testee = GitConfiguration.parse(url);
+
+        assertEquals(pooled, testee.isPooled());
+    }
+
+    @DisplayName("isPrefetch()")
+    @ParameterizedTest(name = "{0} => {1}")
+    @CsvSource({"git:foo,false", "git:foo!?prefetch,true", "git:foo!?prefetch=false,false"})
+    void isPrefetch(String url, boolean prefetch) {
+        GitConfiguration testee = GitConfiguration.parse(url);
+
+        assertEquals(prefetch, testee.isPrefetch());
+    }
+
+    @DisplayName("getPushRetries()")
+    @ParameterizedTest(name = "{0} => {1}")
+    @CsvSource({"git:foo,", "git:foo!?retries,3", "git:foo!?retries=0,0", "git:foo!?retries=10,10"})
+    void getPushRetries(String url, Integer retries) {
+        GitConfiguration testee = GitConfiguration.parse(url);
+
+        assertEquals(retries == null ? OptionalInt.empty() : OptionalInt.of(retries.intValue()),
+                testee.getPushRetries());
+    }
+
+    @DisplayName("equals() and hashCode()")
+    @ParameterizedTest(name = "{0} equals {1}: {2}")
+    @CsvSource({"git:foo!bar!baz?pool,git:foo!bar!baz?pool,true", "git:foo,git:other,false",
+            "git:foo!bar!baz,git:foo!other!baz,false", "git:foo!bar!baz,git:foo!bar!other,false",
+            "git:foo!?pool,git:foo!?pool&sparse,false"})
+    void equalsAndHashCode(String url, String other, boolean equal) {
+        GitConfiguration testee = GitConfiguration.parse(url);
+        GitConfiguration otherConfiguration = GitConfiguration.parse(other);
+
+        assertAll(() -> assertEquals(equal, testee.equals(otherConfiguration)),
+                () -> assertEquals(equal, testee.hashCode() == otherConfiguration.hashCode()));
+    }
+
+    @Test
+    @DisplayName("getTransfer() with an unknown value throws IllegalArgumentException")
+    void getTransfer_invalid() {
+        GitConfiguration testee = GitConfiguration.parse("git:foo!?transfer=foo");
+
+        IllegalArgumentException exception = assertThrows(IllegalArgumentException.class, testee::getTransfer);
+        assertEquals("transfer is not one of [link, channel, copy]: foo", exception.getMessage());
+    }
+
+    @DisplayName("getPostBuffer()")
+    @ParameterizedTest(name = "{0} => {1}")
+    @CsvSource({"git:foo,", "git:foo!?postBuffer,1048576", "git:foo!?postBuffer=524288000,524288000"})
+    void getPostBuffer(String url, Integer postBuffer) {
+        GitConfiguration testee = GitConfiguration.parse(url);
+
+        assertEquals(postBuffer == null ? OptionalInt.empty() : OptionalInt.of(postBuffer), testee.getPostBuffer());
+    }
+
+    @DisplayName("getTimeout()")
+    @ParameterizedTest(name = "{0} => {1}")
+    @CsvSource({"git:foo,", "git:foo!?timeout,60", "git:foo!?timeout=10,10"})
+    void getTimeout(String url, Integer timeout) {
+        GitConfiguration testee = GitConfiguration.parse(url);
+
+        assertEquals(timeout == null ? OptionalInt.empty() : OptionalInt.of(timeout), testee.getTimeout());
+    }
+
+    @Test
+    @DisplayName("withDefaults() adds the options which are not set by the URL")
+    void withDefaults() {
+        Map<String, String> defaults = new HashMap<>();
+        defaults.put("timeout", "10");
+        defaults.put("postBuffer", "1000");
+
+        GitConfiguration testee = GitConfiguration.parse("git:foo!bar!?timeout=42").withDefaults(defaults);
+
+        assertEquals(OptionalInt.of(42), testee.getTimeout());
+        assertEquals(OptionalInt.of(1000), testee.getPostBuffer());
+        assertEquals(Optional.of("bar"), testee.getBranch());
+        assertEquals(GitConfiguration.parse("git:foo!bar!?postBuffer=1000&timeout=42"), testee);
+    }
+
+    @Test
+    @DisplayName("withDefaults() without defaults returns the same configuration")
+    void withDefaults_empty() {
+        GitConfiguration testee = GitConfiguration.parse("git:foo");
+
+        assertSame(testee, testee.withDefaults(Collections.emptyMap()));
+    }
+
     @Test
     @DisplayName("getWorkingDirectory() returns allways the same directory")
     void getWorkingDirectory_returnsAllwaysTheSame() throws IOException {
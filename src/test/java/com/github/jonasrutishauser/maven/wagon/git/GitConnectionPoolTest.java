@@ -0,0 +1,204 @@
+package com.github.jonasrutishauser.maven.wagon.git;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.stream.StreamSupport;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.github.jonasrutishauser.maven.wagon.git.exception.GitPushException;
+import com.github.jonasrutishauser.maven.wagon.git.junit.extension.TemporaryFolderExtension;
+import com.github.jonasrutishauser.maven.wagon.git.junit.extension.TemporaryFolderExtension.Root;
+import com.github.jonasrutishauser.maven.wagon.git.util.BackgroundDeleter;
+
+@ExtendWith(TemporaryFolderExtension.class)
+@DisplayName("GitConnectionPool")
+public class GitConnectionPoolTest {
+
+    private final GitConnectionPool testee = new GitConnectionPool();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    @AfterEach
+    void disposePool() throws InterruptedException {
+        executor.shutdownNow();
+        testee.dispose();
+        assertTrue(BackgroundDeleter.getInstance().awaitPending(Duration.ofSeconds(30)));
+    }
+
+    @Test
+    @DisplayName("acquire() while leased shares the connection and pushes once on the last release")
+    void acquire_concurrent(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir);
+
+        GitConnection first = testee.acquire(configuration, Optional.empty(), Optional.empty());
+        GitConnection second = testee.acquire(configuration, Optional.empty(), Optional.empty());
+        first.put(createFile(tempDir, "foo"), Paths.get("foo"));
+        second.put(createFile(tempDir, "bar"), Paths.get("bar"));
+        Future<?> firstRelease = release(first);
+        assertThrows(TimeoutException.class, () -> firstRelease.get(100, TimeUnit.MILLISECONDS));
+        int commitsAfterFirstRelease = countRemoteCommits(tempDir);
+        testee.release(second);
+        firstRelease.get(30, TimeUnit.SECONDS);
+
+        assertAll(() -> assertSame(first, second), () -> assertEquals(0, commitsAfterFirstRelease),
+                () -> assertEquals(1, countRemoteCommits(tempDir)));
+    }
+
+    @Test
+    @DisplayName("release() without pending changes does not wait for the last release")
+    void release_withoutChanges(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir);
+        GitConnection first = testee.acquire(configuration, Optional.empty(), Optional.empty());
+        GitConnection second = testee.acquire(configuration, Optional.empty(), Optional.empty());
+
+        testee.release(first);
+        testee.release(second);
+
+        assertSame(first, testee.acquire(configuration, Optional.empty(), Optional.empty()));
+    }
+
+    @Test
+    @DisplayName("release() with a rejected push on the last release throws a GitPushException on all releases")
+    void release_pushRejected(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir);
+        GitConnection first = testee.acquire(configuration, Optional.empty(), Optional.empty());
+        GitConnection second = testee.acquire(configuration, Optional.empty(), Optional.empty());
+        first.put(createFile(tempDir, "foo"), Paths.get("foo"));
+        pushFromOtherClone(tempDir, "foo");
+        Future<?> firstRelease = release(first);
+        assertThrows(TimeoutException.class, () -> firstRelease.get(100, TimeUnit.MILLISECONDS));
+
+        assertThrows(GitPushException.class, () -> testee.release(second));
+        ExecutionException exception = assertThrows(ExecutionException.class,
+                () -> firstRelease.get(30, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof GitPushException);
+    }
+
+    @Test
+    @DisplayName("acquire() after release reuses the connection if the remote did not change")
+    void acquire_reuse(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir);
+        GitConnection first = testee.acquire(configuration, Optional.empty(), Optional.empty());
+        first.put(createFile(tempDir, "foo"), Paths.get("foo"));
+        testee.release(first);
+
+        GitConnection second = testee.acquire(configuration, Optional.empty(), Optional.empty());
+
+        assertSame(first, second);
+    }
+
+    @Test
+    @DisplayName("acquire() after release opens a new connection if the remote changed")
+    void acquire_remoteChanged(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir);
+        GitConnection first = testee.acquire(configuration, Optional.empty(), Optional.empty());
+        testee.release(first);
+        pushFromOtherClone(tempDir, "other");
+
+        GitConnection second = testee.acquire(configuration, Optional.empty(), Optional.empty());
+
+        assertAll(() -> assertNotSame(first, second),
+                () -> assertTrue(second.getIfNewer(Paths.get("other"), tempDir.resolve("other"), 0)));
+    }
+
+    @Test
+    @DisplayName("release() of an unknown connection throws IllegalStateException")
+    void release_unknown() {
+        GitConnection connection = mock(GitConnection.class);
+
+        assertThrows(IllegalStateException.class, () -> testee.release(connection));
+    }
+
+    private GitConfiguration createConfiguration(String url, Path tempDir) throws IOException {
+        GitConfiguration configuration = mock(GitConfiguration.class);
+        when(configuration.getUrl()).thenReturn(url);
+        when(configuration.getWorkingDirectory()).thenReturn(tempDir.resolve("work"));
+        when(configuration.getPath()).thenReturn(Optional.empty());
+        when(configuration.getBranch()).thenReturn(Optional.empty());
+        return configuration;
+    }
+
+    private String createRemoteRepo(Path tempDir) throws GitAPIException {
+        Path remote = tempDir.resolve("remote.git");
+        Git.init().setBare(true).setDirectory(remote.toFile()).call().close();
+        return remote.toUri().toString();
+    }
+
+    private Future<?> release(GitConnection connection) {
+        return executor.submit(() -> {
+            testee.release(connection);
+            return null;
+        });
+    }
+
+    private void pushFromOtherClone(Path tempDir, String file) throws GitAPIException, IOException {
+        Path clone = tempDir.resolve("clone");
+        try (Git git = Git.cloneRepository().setURI(tempDir.resolve("remote.git").toUri().toString())
+                .setDirectory(clone.toFile()).call()) {
+            Files.write(clone.resolve(file), Arrays.asList("other"), StandardCharsets.UTF_8);
+            git.add().addFilepattern(file).call();
+            git.commit().setMessage("other").call();
+            git.push().call();
+        }
+    }
+
+    private int countRemoteCommits(Path tempDir) throws IOException, GitAPIException {
+        try (Git git = Git.open(tempDir.resolve("remote.git").toFile())) {
+            if (git.getRepository().resolve("HEAD") == null) {
+                return 0;
+            }
+            return (int) StreamSupport.stream(git.log().call().spliterator(), false).count();
+        }
+    }
+
+    private static Path createFile(Path directory, String name) throws IOException {
+        Path file = directory.resolve(name);
+        Files.write(file, Arrays.asList("test"), StandardCharsets.UTF_8);
+        return file;
+    }
+
+}
@@ -22,11 +22,14 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assumptions.assumeTrue;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.FileVisitResult;
@@ -35,13 +38,21 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.OptionalInt;
 import java.util.Random;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.apache.commons.exec.CommandLine;
@@ -52,6 +63,11 @@ import org.apache.commons.exec.PumpStreamHandler;
 import org.apache.commons.exec.environment.EnvironmentUtils;
 import org.codehaus.plexus.util.FileUtils;
 import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -71,6 +87,10 @@ import com.github.jonasrutishauser.maven.wagon.git.exception.GitPushException;
 import com.github.jonasrutishauser.maven.wagon.git.exception.NoSuchResourceInGitException;
 import com.github.jonasrutishauser.maven.wagon.git.junit.extension.TemporaryFolderExtension;
 import com.github.jonasrutishauser.maven.wagon.git.junit.extension.TemporaryFolderExtension.Root;
+import com.github.jonasrutishauser.maven.wagon.git.metrics.Phase;
+import com.github.jonasrutishauser.maven.wagon.git.metrics.RecordingMetrics;
+import com.github.jonasrutishauser.maven.wagon.git.util.BackgroundDeleter;
+import com.github.jonasrutishauser.maven.wagon.git.util.FileTransfer;
 
 @ExtendWith(TemporaryFolderExtension.class)
 @DisplayName("GitConnection")
@@ -105,6 +125,11 @@ public class GitConnectionTest {
         }
     }
 
+    @AfterEach
+    void awaitDeletedWorkTrees() throws InterruptedException {
+        assertTrue(BackgroundDeleter.getInstance().awaitPending(Duration.ofSeconds(30)));
+    }
+
     @Test
     @DisplayName("open() with an IOException on getting workingDirectory throws a GitCloneException")
     void open_IOExceptionOnWorkingDirectory_GitCloneException(@Root Path tempDir) throws IOException {
@@ -127,6 +152,83 @@ public class GitConnectionTest {
         assertFalse(Files.exists(tempDir.resolve("work")));
     }
 
+    @Test
+    @DisplayName("open() with prefetch and an invalid remote throws a GitCloneException on the first operation")
+    void open_prefetchInvalidRemote_GitCloneExceptionOnGet(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration("https://example.org/no-repo.git", tempDir,
+                Optional.empty(), Optional.empty());
+        when(configuration.isPrefetch()).thenReturn(true);
+        GitConnection testee = GitConnection.open(configuration, Optional.empty(), Optional.empty());
+
+        assertThrows(GitCloneException.class, () -> testee.getIfNewer(Paths.get("foo"), tempDir.resolve("foo"), 0));
+
+        testee.close();
+        assertFalse(Files.exists(tempDir.resolve("work")));
+    }
+
+    @Test
+    @DisplayName("open() with prefetch and an Error on the fetch thread fails the first operation instead of blocking")
+    void open_prefetchError_GitCloneExceptionOnGet(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.isPrefetch()).thenReturn(true);
+        when(configuration.getDepth()).thenThrow(new NoClassDefFoundError("test"));
+        GitConnection testee = GitConnection.open(configuration, Optional.empty(), Optional.empty());
+
+        assertTimeoutPreemptively(Duration.ofSeconds(10), () -> assertThrows(GitCloneException.class,
+                () -> testee.getIfNewer(Paths.get("foo"), tempDir.resolve("foo"), 0)));
+
+        testee.close();
+    }
+
+    @ParameterizedTest(name = "bare={0}")
+    @ValueSource(booleans = {false, true})
+    @DisplayName("open() with prefetch reads and writes the fetched branch")
+    void open_prefetch(boolean bare, @Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.isPrefetch()).thenReturn(true);
+        when(configuration.isBare()).thenReturn(bare);
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("bar");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+
+        testee.put(file, Paths.get("bar"));
+        boolean result = testee.getIfNewer(Paths.get("foo"), tempDir.resolve("foo"), 0);
+        testee.close();
+
+        Path clone = tempDir.resolve("clone");
+        Git.cloneRepository().setURI(tempDir.resolve("remote.git").toUri().toString()).setDirectory(clone.toFile())
+                .call().close();
+        assertAll(() -> assertTrue(result), () -> assertTrue(Files.exists(clone.resolve("foo"))),
+                () -> assertTrue(Files.exists(clone.resolve("bar"))));
+    }
+
+    @ParameterizedTest(name = "bare={0}")
+    @ValueSource(booleans = {false, true})
+    @DisplayName("open() with prefetch and cache writes into the fetched branch")
+    void open_prefetchWithCache(boolean bare, @Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.isPrefetch()).thenReturn(true);
+        when(configuration.isBare()).thenReturn(bare);
+        when(configuration.getCacheDirectory()).thenReturn(Optional.of(tempDir.resolve("cache")));
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("bar");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+
+        testee.put(file, Paths.get("bar"));
+        testee.close();
+
+        Path clone = tempDir.resolve("clone");
+        Git.cloneRepository().setURI(tempDir.resolve("remote.git").toUri().toString()).setDirectory(clone.toFile())
+                .call().close();
+        assertAll(() -> assertTrue(Files.exists(clone.resolve("foo"))),
+                () -> assertTrue(Files.exists(clone.resolve("bar"))));
+    }
+
     @ParameterizedTest(name = "with pathInRepo={0} and branch={1}")
     @ArgumentsSource(PathAndBranchArguments.class)
     @DisplayName("open() works for a valid remote")
@@ -156,6 +258,177 @@ public class GitConnectionTest {
         }
     }
 
+    @ParameterizedTest(name = "branch {0}")
+    @ArgumentsSource(BranchArguments.class)
+    @DisplayName("open() with cache fetches into the local mirror")
+    void open_withCache_fetchesIntoMirror(Optional<String> branch, @Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepoWithContent(tempDir,
+                branch.orElse("master")), tempDir, Optional.empty(), branch);
+        when(configuration.getCacheDirectory()).thenReturn(Optional.of(tempDir.resolve("cache")));
+        Path mirror = LocalMirror.of(tempDir.resolve("cache"), configuration.getUrl()).getDirectory();
+
+        GitConnection.open(configuration, Optional.empty(), Optional.empty());
+
+        assertAll(() -> assertTrue(Files.exists(mirror.resolve("refs/heads/" + branch.orElse("master")))),
+                () -> assertTrue(Files.exists(tempDir.resolve("work/.git/objects/info/alternates"))),
+                () -> assertTrue(Files.exists(tempDir.resolve("work/.git/refs/heads/" + branch.orElse("master")))));
+    }
+
+    @ParameterizedTest(name = "branch {0}")
+    @ArgumentsSource(BranchArguments.class)
+    @DisplayName("open() with cache and a missing branch starts the branch on close()")
+    void open_withCacheAndMissingBranch_pushesNewBranch(Optional<String> branch, @Root Path tempDir)
+            throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepoWithContent(tempDir, "other"), tempDir,
+                Optional.empty(), branch);
+        when(configuration.getCacheDirectory()).thenReturn(Optional.of(tempDir.resolve("cache")));
+        GitConnection testee = GitConnection.open(configuration, Optional.empty(), Optional.empty());
+        addChange(testee, tempDir);
+
+        testee.close();
+
+        assertTrue(Files.exists(tempDir.resolve("remote.git/refs/heads/" + branch.orElse("master"))));
+    }
+
+    @Test
+    @DisplayName("open() with cache reuses the local mirror after close()")
+    void open_withCache_reusesMirror(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.getCacheDirectory()).thenReturn(Optional.of(tempDir.resolve("cache")));
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        createTestee(configuration).close();
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("bar");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+        testee.put(file, Paths.get("bar"));
+
+        testee.close();
+
+        Path clone = tempDir.resolve("clone");
+        Files.createDirectory(clone);
+        Executor executor = createExecutor();
+        executor.setWorkingDirectory(clone.toFile());
+        executor.execute(CommandLine.parse("git clone ../remote.git ."));
+        assertAll(() -> assertTrue(Files.exists(clone.resolve("foo"))),
+                () -> assertTrue(Files.exists(clone.resolve("bar"))),
+                () -> assertTrue(Files.isDirectory(LocalMirror.of(tempDir.resolve("cache"), configuration.getUrl())
+                        .getDirectory().resolve("objects"))));
+    }
+
+    @ParameterizedTest(name = "with cache={0}")
+    @ValueSource(booleans = {false, true})
+    @DisplayName("open() with depth fetches a shallow history")
+    void open_withDepth_shallow(boolean cache, @Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.getDepth()).thenReturn(OptionalInt.of(1));
+        if (cache) {
+            when(configuration.getCacheDirectory()).thenReturn(Optional.of(tempDir.resolve("cache")));
+        }
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        addCommitToRepo(tempDir);
+
+        GitConnection testee = GitConnection.open(configuration, Optional.empty(), Optional.empty());
+
+        try (Git git = Git.open(tempDir.resolve("work").toFile())) {
+            assertAll(() -> assertTrue(Files.exists(tempDir.resolve("work/.git/shallow"))),
+                    () -> assertEquals(1, count(git.log().call())),
+                    () -> assertTrue(testee.getIfNewer(Paths.get("foo"), tempDir.resolve("target"), 42)));
+        }
+    }
+
+    @Test
+    @DisplayName("open() with cache and without depth after one with depth fetches the full history")
+    void open_withCacheAfterDepth_fullHistory(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.getCacheDirectory()).thenReturn(Optional.of(tempDir.resolve("cache")));
+        when(configuration.getDepth()).thenReturn(OptionalInt.of(1));
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        addCommitToRepo(tempDir);
+        createTestee(configuration).close();
+        when(configuration.getDepth()).thenReturn(OptionalInt.empty());
+
+        createTestee(configuration);
+
+        try (Git git = Git.open(tempDir.resolve("work").toFile())) {
+            assertAll(() -> assertFalse(Files.exists(tempDir.resolve("work/.git/shallow"))),
+                    () -> assertEquals(2, count(git.log().call())),
+                    () -> assertFalse(Files.exists(LocalMirror.of(tempDir.resolve("cache"), configuration.getUrl())
+                            .getDirectory().resolve("shallow"))));
+        }
+    }
+
+    @Test
+    @DisplayName("close() with a change does push from a shallow history")
+    void close_withDepth_doPush(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.getDepth()).thenReturn(OptionalInt.of(1));
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        addCommitToRepo(tempDir);
+        GitConnection testee = createTestee(configuration);
+        addChange(testee, tempDir);
+
+        testee.close();
+
+        try (Git git = Git.open(tempDir.resolve("remote.git").toFile())) {
+            assertEquals(3, count(git.log().call()));
+        }
+    }
+
+    @ParameterizedTest(name = "with cache={0}")
+    @ValueSource(booleans = {false, true})
+    @DisplayName("open() with sparse checks out only the path")
+    void open_sparse_checksOutOnlyPath(boolean cache, @Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir,
+                Optional.of(Paths.get("foo", "bar")), Optional.empty());
+        when(configuration.isSparse()).thenReturn(true);
+        if (cache) {
+            when(configuration.getCacheDirectory()).thenReturn(Optional.of(tempDir.resolve("cache")));
+        }
+        addFooFileToRepo(tempDir, Optional.of(Paths.get("foo", "bar")), Optional.empty());
+        Files.write(tempDir.resolve("remote-init/bar"), Arrays.asList("test"), StandardCharsets.UTF_8);
+        Executor executor = createExecutor();
+        executor.setWorkingDirectory(tempDir.resolve("remote-init").toFile());
+        executor.execute(CommandLine.parse("git add bar"));
+        executor.execute(CommandLine.parse("git commit -m 'bar'"));
+        executor.execute(CommandLine.parse("git push origin master"));
+
+        GitConnection.open(configuration, Optional.empty(), Optional.empty());
+
+        assertAll(() -> assertTrue(Files.exists(tempDir.resolve("work/foo/bar/foo"))),
+                () -> assertFalse(Files.exists(tempDir.resolve("work/bar"))));
+    }
+
+    @Test
+    @DisplayName("close() with sparse keeps files outside of the path")
+    void close_sparse_keepsOtherFiles(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir,
+                Optional.of(Paths.get("test")), Optional.empty());
+        when(configuration.isSparse()).thenReturn(true);
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        Path remoteRef = tempDir.resolve("remote.git/refs/heads/master");
+        String ref = Files.readAllLines(remoteRef, StandardCharsets.UTF_8).get(0);
+        createTestee(configuration).close();
+        assumeTrue(ref.equals(Files.readAllLines(remoteRef, StandardCharsets.UTF_8).get(0)));
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("bar");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+        testee.put(file, Paths.get("deep/bar"));
+
+        testee.close();
+
+        Path clone = tempDir.resolve("clone");
+        Files.createDirectory(clone);
+        Executor executor = createExecutor();
+        executor.setWorkingDirectory(clone.toFile());
+        executor.execute(CommandLine.parse("git clone ../remote.git ."));
+        assertAll(() -> assertTrue(Files.exists(clone.resolve("foo"))),
+                () -> assertTrue(Files.exists(clone.resolve("test/deep/bar"))));
+    }
+
     @ParameterizedTest(name = "username={0}, password={1}")
     @CsvSource({",", "foo,", ",foo", "foo,bar"})
     @DisplayName("open() repo on github via https with invalid credentials throws GitAuthenticationException")
@@ -237,12 +510,67 @@ public class GitConnectionTest {
         assertFalse(Files.exists(tempDir.resolve("remote.git/refs/heads/master")));
     }
 
+    @Test
+    @DisplayName("close() after get() only neither checks the status nor pushes")
+    void close_readOnly_noStatusAndNoPush(@Root Path tempDir) throws Exception {
+        String url = createRemoteRepo(tempDir);
+        GitConfiguration configuration = createConfiguration(url, tempDir, Optional.empty(), Optional.empty());
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        testee.getIfNewer(Paths.get("foo"), tempDir.resolve("target"), 0);
+
+        testee.close();
+
+        assertEquals(Arrays.asList("fetch", "get", "delete", "closed"), RecordingMetrics.getEvents(url).stream()
+                .filter(event -> !"checkout".equals(event)).collect(Collectors.toList()));
+    }
+
+    @Test
+    @DisplayName("put() of a directory rewrites only the files with changed content")
+    void put_directory_skipsUnchangedFiles(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        addFooFileToRepo(tempDir, Optional.of(Paths.get("dir")), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        Path foo = tempDir.resolve("work/dir/foo");
+        Files.setLastModifiedTime(foo, FileTime.fromMillis(0));
+        Path source = tempDir.resolve("source");
+        Files.createDirectory(source);
+        Files.write(source.resolve("foo"), Arrays.asList("test"), StandardCharsets.UTF_8);
+        Files.write(source.resolve("bar"), Arrays.asList("bar"), StandardCharsets.UTF_8);
+
+        testee.put(source, Paths.get("dir"));
+
+        assertAll(() -> assertEquals(FileTime.fromMillis(0), Files.getLastModifiedTime(foo)),
+                () -> assertEquals(Arrays.asList("bar"),
+                        Files.readAllLines(tempDir.resolve("work/dir/bar"), StandardCharsets.UTF_8)));
+        testee.close();
+    }
+
+    @Test
+    @DisplayName("close() after put() of unchanged content does not push")
+    void close_withUnchangedPut_doNotPush(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        Path remoteRef = tempDir.resolve("remote.git/refs/heads/master");
+        String ref = Files.readAllLines(remoteRef, StandardCharsets.UTF_8).get(0);
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("foo");
+        Files.write(file, Arrays.asList("test"), StandardCharsets.UTF_8);
+        testee.put(file, Paths.get("foo"));
+
+        testee.close();
+
+        assertEquals(ref, Files.readAllLines(remoteRef, StandardCharsets.UTF_8).get(0));
+    }
+
     @ParameterizedTest(name = "branch {0}")
     @ArgumentsSource(BranchArguments.class)
     @DisplayName("close() with a change does push")
     void close_withChange_doPush(Optional<String> branch, @Root Path tempDir) throws Exception {
         GitConnection testee = createTestee(tempDir, Optional.empty(), branch);
-        addChange(tempDir);
+        addChange(testee, tempDir);
 
         testee.close();
 
@@ -257,12 +585,12 @@ public class GitConnectionTest {
         GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
                 branch);
         GitConnection testee = createTestee(configuration);
-        addChange(tempDir);
+        addChange(testee, tempDir);
         testee.close();
         assumeTrue(Files.exists(remoteBranchRefFile));
         String ref = Files.readAllLines(remoteBranchRefFile, StandardCharsets.UTF_8).get(0);
         testee = createTestee(configuration);
-        addChange(tempDir);
+        addChange(testee, tempDir);
 
         testee.close();
 
@@ -271,36 +599,189 @@ public class GitConnectionTest {
 
     @Test
     @DisplayName("close() with a change conflicting with remote throws GitPushException")
-    void close_withChangeConflict_GitPushException(@Root Path tempDir) throws IOException {
+    void close_withChangeConflict_GitPushException(@Root Path tempDir) throws IOException, GitException {
         GitConnection testee = createTestee(tempDir);
-        addChange(tempDir);
+        addChange(testee, tempDir);
         Path otherWorkingDir = tempDir.resolve("other");
         Files.createDirectory(otherWorkingDir);
         Executor executor = createExecutor();
         executor.setWorkingDirectory(otherWorkingDir.toFile());
         executor.execute(CommandLine.parse("git clone ../remote.git ."));
-        executor.execute(CommandLine.parse("git commit -m 'test' --allow-empty"));
+        Files.write(otherWorkingDir.resolve("foo"), Arrays.asList("other"), StandardCharsets.UTF_8);
+        executor.execute(CommandLine.parse("git add foo"));
+        executor.execute(CommandLine.parse("git commit -m 'test'"));
         executor.execute(CommandLine.parse("git push"));
 
         assertThrows(GitPushException.class, () -> testee.close());
     }
 
+    @ParameterizedTest(name = "bare={0}")
+    @ValueSource(booleans = {false, true})
+    @DisplayName("close() records the metrics of all phases")
+    void close_recordsMetrics(boolean bare, @Root Path tempDir) throws Exception {
+        String url = createRemoteRepo(tempDir);
+        GitConfiguration configuration = createConfiguration(url, tempDir, Optional.empty(), Optional.empty());
+        when(configuration.isBare()).thenReturn(bare);
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("bar");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+        pushOtherFile(tempDir, "other", "other");
+
+        testee.getIfNewer(Paths.get("foo"), tempDir.resolve("foo"), 0);
+        testee.put(file, Paths.get("bar"));
+        testee.close();
+
+        List<String> expected = new ArrayList<>(Arrays.asList("fetch", "get", "put"));
+        expected.addAll(bare ? Arrays.asList("commit") : Arrays.asList("stage", "status", "commit"));
+        expected.addAll(Arrays.asList("push", "retried push", "fetch", "push", "delete", "closed"));
+        assertEquals(expected, RecordingMetrics.getEvents(url).stream().filter(event -> !"checkout".equals(event))
+                .collect(Collectors.toList()));
+    }
+
+    @ParameterizedTest(name = "bare={0}")
+    @ValueSource(booleans = {false, true})
+    @DisplayName("close() records the objects of the fetch and of the push")
+    void close_recordsObjects(boolean bare, @Root Path tempDir) throws Exception {
+        String url = createRemoteRepo(tempDir);
+        GitConfiguration configuration = createConfiguration(url, tempDir, Optional.empty(), Optional.empty());
+        when(configuration.isBare()).thenReturn(bare);
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("bar");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+
+        testee.put(file, Paths.get("dir/bar"));
+        testee.close();
+
+        // commit, root tree, tree of dir and blob of bar
+        assertAll(() -> assertEquals(4, RecordingMetrics.getObjects(url, Phase.PUSH)),
+                () -> assertTrue(RecordingMetrics.getObjects(url, Phase.FETCH) >= 3));
+    }
+
+    @ParameterizedTest(name = "bare={0}, partial={1}")
+    @CsvSource({"false,false", "true,false", "false,true"})
+    @DisplayName("flush() with a concurrent change on the remote replays the change and pushes")
+    void flush_withConcurrentChange_rebaseAndPush(boolean bare, boolean partial, @Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.isBare()).thenReturn(bare);
+        when(configuration.isPartial()).thenReturn(partial);
+        allowPartialClone(tempDir);
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("bar");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+        testee.put(file, Paths.get("bar"));
+        pushOtherFile(tempDir, "other", "other");
+
+        testee.flush();
+
+        Path clone = tempDir.resolve("clone");
+        Git.cloneRepository().setURI(tempDir.resolve("remote.git").toUri().toString()).setDirectory(clone.toFile())
+                .call().close();
+        assertAll(() -> assertTrue(Files.exists(clone.resolve("bar"))),
+                () -> assertTrue(Files.exists(clone.resolve("other"))),
+                () -> assertTrue(testee.getIfNewer(Paths.get("other"), tempDir.resolve("other"), Long.MIN_VALUE)));
+        testee.close();
+    }
+
+    @Test
+    @DisplayName("flush() with sparse and a concurrent change outside of the path keeps the work tree sparse")
+    void flush_sparseWithConcurrentChange_checksOutOnlyPath(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir,
+                Optional.of(Paths.get("test")), Optional.empty());
+        when(configuration.isSparse()).thenReturn(true);
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("bar");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+        testee.put(file, Paths.get("bar"));
+        pushOtherFile(tempDir, "other", "other");
+
+        testee.flush();
+
+        Path clone = tempDir.resolve("clone");
+        Git.cloneRepository().setURI(tempDir.resolve("remote.git").toUri().toString()).setDirectory(clone.toFile())
+                .call().close();
+        assertAll(() -> assertTrue(Files.exists(clone.resolve("test/bar"))),
+                () -> assertTrue(Files.exists(clone.resolve("other"))),
+                () -> assertTrue(Files.exists(tempDir.resolve("work/test/bar"))),
+                () -> assertFalse(Files.exists(tempDir.resolve("work/other"))),
+                () -> assertFalse(Files.exists(tempDir.resolve("work/foo"))));
+        testee.close();
+    }
+
+    @ParameterizedTest(name = "bare={0}, partial={1}")
+    @CsvSource({"false,false", "true,false", "false,true"})
+    @DisplayName("flush() with a concurrent change of maven-metadata.xml merges the metadata and pushes")
+    void flush_withConcurrentMetadataChange_mergeAndPush(boolean bare, boolean partial, @Root Path tempDir)
+            throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.isBare()).thenReturn(bare);
+        when(configuration.isPartial()).thenReturn(partial);
+        allowPartialClone(tempDir);
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("metadata");
+        Files.write(file, Arrays.asList(metadata("20200101000002", "1.1")), StandardCharsets.UTF_8);
+        testee.put(file, Paths.get("maven-metadata.xml"));
+        Files.write(file, Arrays.asList("ours"), StandardCharsets.UTF_8);
+        testee.put(file, Paths.get("maven-metadata.xml.sha1"));
+        pushOtherFile(tempDir, "maven-metadata.xml", metadata("20200101000001", "1.0"));
+
+        testee.flush();
+
+        Path clone = tempDir.resolve("clone");
+        Git.cloneRepository().setURI(tempDir.resolve("remote.git").toUri().toString()).setDirectory(clone.toFile())
+                .call().close();
+        byte[] metadata = Files.readAllBytes(clone.resolve("maven-metadata.xml"));
+        String content = new String(metadata, StandardCharsets.UTF_8);
+        assertAll(() -> assertTrue(content.contains("<version>1.0</version>"), content),
+                () -> assertTrue(content.contains("<version>1.1</version>"), content),
+                () -> assertEquals(ObjectId.fromRaw(Constants.newMessageDigest().digest(metadata)).name(),
+                        new String(Files.readAllBytes(clone.resolve("maven-metadata.xml.sha1")),
+                                StandardCharsets.US_ASCII)));
+        testee.close();
+    }
+
+    @Test
+    @DisplayName("close() with a concurrent change on the remote and without retries throws GitPushException")
+    void close_withConcurrentChangeWithoutRetries_GitPushException(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.getPushRetries()).thenReturn(OptionalInt.of(0));
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("bar");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+        testee.put(file, Paths.get("bar"));
+        pushOtherFile(tempDir, "other", "other");
+
+        assertThrows(GitPushException.class, () -> testee.close());
+    }
+
     @Test
     @DisplayName("close() with a change failed to connecto to remote throws GitPushException")
     void close_withChangeAndRemoteNotAccessible_GitPushException(@Root Path tempDir)
-            throws IOException, GitPushException, GitAuthenticationException {
+            throws IOException, GitException {
         GitConnection testee = createTestee(tempDir);
-        addChange(tempDir);
+        addChange(testee, tempDir);
         FileUtils.deleteDirectory(tempDir.resolve("remote.git").toFile());
 
         assertThrows(GitPushException.class, () -> testee.close());
+        assertFalse(Files.exists(tempDir.resolve("work")));
     }
 
     @ParameterizedTest(name = "pathInRepo is {0}")
     @ArgumentsSource(PathArguments.class)
-    @DisplayName("put() of a file adds it")
+    @DisplayName("put() of a file adds it (with batch size 1)")
     void put_addsFile(Optional<Path> pathInRepo, @Root Path tempDir) throws IOException, GitException {
-        GitConnection testee = createTestee(tempDir, pathInRepo);
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, pathInRepo,
+                Optional.empty());
+        when(configuration.getBatchSize()).thenReturn(OptionalInt.of(1));
+        GitConnection testee = createTestee(configuration);
         Path file = tempDir.resolve("foo");
         Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
 
@@ -314,6 +795,122 @@ public class GitConnectionTest {
         }
     }
 
+    @ParameterizedTest(name = "bare={0}, length={1}")
+    @CsvSource({"false,-1", "false,3", "true,-1", "true,3"})
+    @DisplayName("put() of a stream writes it and close() pushes it")
+    void put_stream(boolean bare, long length, @Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.isBare()).thenReturn(bare);
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+
+        testee.put(new ByteArrayInputStream("bar".getBytes(StandardCharsets.UTF_8)), length, Paths.get("test/foo"));
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        boolean result = testee.getIfNewer(Paths.get("test/foo"), content, Long.MIN_VALUE);
+        testee.close();
+
+        Path clone = tempDir.resolve("clone");
+        Git.cloneRepository().setURI(tempDir.resolve("remote.git").toUri().toString()).setDirectory(clone.toFile())
+                .call().close();
+        assertAll(() -> assertTrue(result), () -> assertEquals("bar", content.toString("UTF-8")),
+                () -> assertEquals(Arrays.asList("bar"), Files.readAllLines(clone.resolve("test/foo"))));
+    }
+
+    @ParameterizedTest(name = "bare={0}")
+    @ValueSource(booleans = {false, true})
+    @DisplayName("getIfNewer() of a directory to a stream throws GitException")
+    void getIfNewer_directoryToStream_GitException(boolean bare, @Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.isBare()).thenReturn(bare);
+        addFooFileToRepo(tempDir, Optional.of(Paths.get("test")), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+
+        assertThrows(GitException.class,
+                () -> testee.getIfNewer(Paths.get("test"), new ByteArrayOutputStream(), Long.MIN_VALUE));
+    }
+
+    @Test
+    @DisplayName("put() of a file stages it with the stat data of the work tree file")
+    void put_stagesWithStatData(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.getBatchSize()).thenReturn(OptionalInt.of(1));
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("foo");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+
+        testee.put(file, Paths.get("test/foo"));
+
+        Path targetFile = tempDir.resolve("work/test/foo");
+        try (Git git = Git.open(tempDir.resolve("work").toFile())) {
+            DirCacheEntry entry = git.getRepository().readDirCache().getEntry("test/foo");
+            ObjectId expectedId;
+            try (ObjectInserter.Formatter formatter = new ObjectInserter.Formatter()) {
+                expectedId = formatter.idFor(Constants.OBJ_BLOB, Files.readAllBytes(file));
+            }
+            assertAll(() -> assertEquals(expectedId, entry.getObjectId()),
+                    () -> assertEquals(Files.size(targetFile), entry.getLength()),
+                    () -> assertEquals(Files.getLastModifiedTime(targetFile).toInstant(),
+                            entry.getLastModifiedInstant()),
+                    () -> assertTrue(git.status().call().getModified().isEmpty()));
+        }
+    }
+
+    @Test
+    @DisplayName("put() of a file never links it into the work tree")
+    void put_doesNotLink(@Root Path tempDir) throws IOException, GitException {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.getTransfer()).thenReturn(Optional.of(FileTransfer.LINK));
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("foo");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+
+        testee.put(file, Paths.get("foo"));
+
+        assertFalse(Files.isSameFile(file, tempDir.resolve("work/foo")));
+    }
+
+    @Test
+    @DisplayName("put() stages the files in batches")
+    void put_stagesInBatches(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.getBatchSize()).thenReturn(OptionalInt.of(2));
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("foo");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+
+        testee.put(file, Paths.get("foo"));
+        try (Git git = Git.open(tempDir.resolve("work").toFile())) {
+            assertEquals(Collections.emptySet(), git.status().call().getAdded());
+        }
+        testee.put(file, Paths.get("bar"));
+
+        try (Git git = Git.open(tempDir.resolve("work").toFile())) {
+            assertEquals(new HashSet<>(Arrays.asList("foo", "bar")), git.status().call().getAdded());
+        }
+    }
+
+    @Test
+    @DisplayName("close() stages and pushes the put files")
+    void close_stagesPutFiles(@Root Path tempDir) throws Exception {
+        GitConnection testee = createTestee(tempDir);
+        Path file = tempDir.resolve("foo");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+        testee.put(file, Paths.get("foo"));
+        testee.put(file, Paths.get("bar"));
+
+        testee.close();
+
+        try (Git git = Git.open(tempDir.resolve("remote.git").toFile())) {
+            assertAll(() -> assertEquals(1, count(git.log().addPath("foo").call())),
+                    () -> assertEquals(1, count(git.log().addPath("bar").call())));
+        }
+    }
+
     @Test
     @DisplayName("put() of a file with a directory there throws GitException")
     void put_directoryThere_GitException(@Root Path tempDir) throws IOException, GitException {
@@ -328,9 +925,12 @@ public class GitConnectionTest {
 
     @ParameterizedTest(name = "pathInRepo is {0}")
     @ArgumentsSource(PathArguments.class)
-    @DisplayName("put() of a directory adds it")
+    @DisplayName("put() of a directory adds it (with batch size 1)")
     void put_addsDirectory(Optional<Path> pathInRepo, @Root Path tempDir) throws IOException, GitException {
-        GitConnection testee = createTestee(tempDir, pathInRepo);
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, pathInRepo,
+                Optional.empty());
+        when(configuration.getBatchSize()).thenReturn(OptionalInt.of(1));
+        GitConnection testee = createTestee(configuration);
         Path file = tempDir.resolve("test/deep/foo");
         Files.createDirectories(file.getParent());
         Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
@@ -348,9 +948,12 @@ public class GitConnectionTest {
 
     @ParameterizedTest(name = "pathInRepo is {0}")
     @ArgumentsSource(PathArguments.class)
-    @DisplayName("put() of a directory to root adds it")
+    @DisplayName("put() of a directory to root adds it (with batch size 1)")
     void put_addsDirectoryToRoot(Optional<Path> pathInRepo, @Root Path tempDir) throws IOException, GitException {
-        GitConnection testee = createTestee(tempDir, pathInRepo);
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, pathInRepo,
+                Optional.empty());
+        when(configuration.getBatchSize()).thenReturn(OptionalInt.of(1));
+        GitConnection testee = createTestee(configuration);
         Path file = tempDir.resolve("test/deep/foo");
         Files.createDirectories(file.getParent());
         Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
@@ -417,6 +1020,23 @@ public class GitConnectionTest {
         assertTrue(result && Files.exists(target));
     }
 
+    @ParameterizedTest(name = "transfer={0} links the file: {1}")
+    @CsvSource({",false", "LINK,true", "CHANNEL,false", "COPY,false"})
+    @DisplayName("getIfNewer() of a newer file uses the configured transfer")
+    void getIfNewer_newerFile_transfer(FileTransfer transfer, boolean linked, @Root Path tempDir)
+            throws IOException, GitException {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.getTransfer()).thenReturn(Optional.ofNullable(transfer));
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        Path target = tempDir.resolve("foo");
+
+        testee.getIfNewer(Paths.get("foo"), target, 0);
+
+        assertEquals(linked, Files.isSameFile(tempDir.resolve("work/foo"), target));
+    }
+
     @Test
     @DisplayName("getIfNewer() of a newer file with IOException when copy throws GitException")
     void getIfNewer_newerFileButIOException_GitException(@Root Path tempDir) throws IOException, GitException {
@@ -431,11 +1051,278 @@ public class GitConnectionTest {
         assertThrows(GitException.class, () -> testee.getIfNewer(Paths.get("foo"), target, 42));
     }
 
-    private void addChange(Path tempDir) throws IOException, ExecuteException {
-        Files.write(tempDir.resolve("work/foo"), Arrays.asList("" + new Random().nextLong()), StandardCharsets.UTF_8);
+    @ParameterizedTest(name = "with pathInRepo={0} and branch={1}")
+    @ArgumentsSource(PathAndBranchArguments.class)
+    @DisplayName("getIfNewer() with bare of a newer file returns true and copies the file without a checkout")
+    void getIfNewer_bareNewerFile_trueAndCopy(Optional<Path> pathInRepo, Optional<String> branch,
+            @Root Path tempDir) throws IOException, GitException {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, pathInRepo, branch);
+        when(configuration.isBare()).thenReturn(true);
+        long timestamp = Instant.parse("2005-04-07T22:13:13Z").getEpochSecond() - 1;
+        addFooFileToRepo(tempDir, pathInRepo, branch);
+        GitConnection testee = createTestee(configuration);
+        Path target = tempDir.resolve("target");
+
+        boolean result = testee.getIfNewer(Paths.get("foo"), target, timestamp);
+
+        assertAll(() -> assertTrue(result),
+                () -> assertEquals(Arrays.asList("test"), Files.readAllLines(target, StandardCharsets.UTF_8)),
+                () -> assertFalse(Files.exists(tempDir.resolve("work").resolve(pathInRepo.orElse(Paths.get("")))
+                        .resolve("foo"))));
+    }
+
+    @ParameterizedTest(name = "pathInRepo is {0}")
+    @ArgumentsSource(PathArguments.class)
+    @DisplayName("getIfNewer() with bare of a directory copies all files")
+    void getIfNewer_bareDirectory_copiesFiles(Optional<Path> pathInRepo, @Root Path tempDir)
+            throws IOException, GitException {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.isBare()).thenReturn(true);
+        addFooFileToRepo(tempDir, pathInRepo, Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        Path target = tempDir.resolve("target");
+
+        boolean result = testee.getIfNewer(Paths.get("."), target, 42);
+
+        assertAll(() -> assertTrue(result), () -> assertEquals(Arrays.asList("test"), Files.readAllLines(
+                target.resolve(pathInRepo.orElse(Paths.get(""))).resolve("foo"), StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    @DisplayName("getIfNewer() with bare of an older file returns false")
+    void getIfNewer_bareOlderFile_false(@Root Path tempDir) throws IOException, GitException {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.isBare()).thenReturn(true);
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        Path target = tempDir.resolve("target");
+
+        boolean result = testee.getIfNewer(Paths.get("foo"), target, Instant.now().getEpochSecond() - 10);
+
+        assertFalse(result || Files.exists(target));
+    }
+
+    @ParameterizedTest(name = "with existing branch={0}")
+    @ValueSource(booleans = {false, true})
+    @DisplayName("getIfNewer() with bare of an inexisting file throws NoSuchResourceInGitException")
+    void getIfNewer_bareInexistingFile_NoSuchResourceInGitException(boolean existingBranch, @Root Path tempDir)
+            throws IOException, GitException {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.isBare()).thenReturn(true);
+        if (existingBranch) {
+            addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        }
+        GitConnection testee = createTestee(configuration);
+
+        assertThrows(NoSuchResourceInGitException.class,
+                () -> testee.getIfNewer(Paths.get("bar"), tempDir.resolve("target"), 42));
+    }
+
+    @ParameterizedTest(name = "with cache={0}")
+    @ValueSource(booleans = {false, true})
+    @DisplayName("getIfNewer() with partial fetches only the blobs which are read")
+    void getIfNewer_partial_fetchesReadBlobsOnly(boolean cache, @Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.isPartial()).thenReturn(true);
+        if (cache) {
+            when(configuration.getCacheDirectory()).thenReturn(Optional.of(tempDir.resolve("cache")));
+        }
+        allowPartialClone(tempDir);
+        addFooFileToRepo(tempDir, Optional.of(Paths.get("dir")), Optional.empty());
+        pushOtherFile(tempDir, "bar", "bar");
+        ObjectId foo;
+        ObjectId bar;
+        try (Git remote = Git.open(tempDir.resolve("remote.git").toFile())) {
+            foo = remote.getRepository().resolve("master:dir/foo");
+            bar = remote.getRepository().resolve("master:bar");
+        }
+        GitConnection testee = createTestee(configuration);
+        Path target = tempDir.resolve("target");
+
+        try (Git git = Git.open(tempDir.resolve("work").toFile())) {
+            assertFalse(git.getRepository().getObjectDatabase().has(foo));
+
+            boolean result = testee.getIfNewer(Paths.get("dir"), target, 42);
+
+            assertAll(() -> assertTrue(result),
+                    () -> assertEquals(Arrays.asList("test"),
+                            Files.readAllLines(target.resolve("foo"), StandardCharsets.UTF_8)),
+                    () -> assertTrue(git.getRepository().getObjectDatabase().has(foo)),
+                    () -> assertFalse(git.getRepository().getObjectDatabase().has(bar)),
+                    () -> assertFalse(Files.exists(tempDir.resolve("work/dir/foo"))));
+        }
+        testee.close();
+    }
+
+    @Test
+    @DisplayName("close() with partial after put() does push")
+    void close_partialWithPut_doPush(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.isPartial()).thenReturn(true);
+        allowPartialClone(tempDir);
+        addFooFileToRepo(tempDir, Optional.of(Paths.get("other")), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("bar");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+        testee.put(file, Paths.get("bar"));
+
+        testee.close();
+
+        Path clone = tempDir.resolve("clone");
+        Git.cloneRepository().setURI(tempDir.resolve("remote.git").toUri().toString()).setDirectory(clone.toFile())
+                .call().close();
+        assertAll(() -> assertTrue(Files.exists(clone.resolve("other/foo"))),
+                () -> assertTrue(Files.exists(clone.resolve("bar"))));
+    }
+
+    @Test
+    @DisplayName("close() with bare without a change does not push")
+    void close_bareWithoutChange_doNotPush(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.isBare()).thenReturn(true);
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        Path remoteRef = tempDir.resolve("remote.git/refs/heads/master");
+        String ref = Files.readAllLines(remoteRef, StandardCharsets.UTF_8).get(0);
+        GitConnection testee = createTestee(configuration);
+
+        testee.close();
+
+        assertAll(() -> assertEquals(ref, Files.readAllLines(remoteRef, StandardCharsets.UTF_8).get(0)),
+                () -> assertFalse(Files.exists(tempDir.resolve("work"))));
+    }
+
+    @ParameterizedTest(name = "pathInRepo is {0}")
+    @ArgumentsSource(PathArguments.class)
+    @DisplayName("close() with bare after put() does push without a work tree")
+    void close_bareWithPut_doPush(Optional<Path> pathInRepo, @Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, pathInRepo,
+                Optional.empty());
+        when(configuration.isBare()).thenReturn(true);
+        addFooFileToRepo(tempDir, Optional.of(Paths.get("other")), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("bar");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+        testee.put(file, Paths.get("bar"));
+
+        testee.close();
+
+        Path clone = tempDir.resolve("clone");
+        Files.createDirectory(clone);
         Executor executor = createExecutor();
-        executor.setWorkingDirectory(tempDir.resolve("work").toFile());
-        executor.execute(CommandLine.parse("git add foo"));
+        executor.setWorkingDirectory(clone.toFile());
+        executor.execute(CommandLine.parse("git clone ../remote.git ."));
+        assertAll(() -> assertTrue(Files.exists(clone.resolve("other/foo"))),
+                () -> assertTrue(Files.exists(clone.resolve(pathInRepo.orElse(Paths.get(""))).resolve("bar"))));
+    }
+
+    @ParameterizedTest(name = "pathInRepo is {0}")
+    @ArgumentsSource(PathArguments.class)
+    @DisplayName("put() with bare of a directory adds it without a work tree")
+    void put_bareDirectory_readableWithoutWorkTree(Optional<Path> pathInRepo, @Root Path tempDir)
+            throws IOException, GitException {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, pathInRepo,
+                Optional.empty());
+        when(configuration.isBare()).thenReturn(true);
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("test/deep/foo");
+        Files.createDirectories(file.getParent());
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+
+        testee.put(tempDir.resolve("test"), Paths.get("test"));
+
+        Path target = tempDir.resolve("target");
+        assertAll(() -> assertTrue(testee.getIfNewer(Paths.get("test/deep/foo"), target, 42)),
+                () -> assertEquals(Arrays.asList("bar"), Files.readAllLines(target, StandardCharsets.UTF_8)),
+                () -> assertFalse(Files.exists(tempDir.resolve("work").resolve(pathInRepo.orElse(Paths.get("")))
+                        .resolve("test"))));
+    }
+
+    @Test
+    @DisplayName("put() with bare of a file with a directory there throws GitException")
+    void put_bareDirectoryThere_GitException(@Root Path tempDir) throws IOException, GitException {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.isBare()).thenReturn(true);
+        addFooFileToRepo(tempDir, Optional.of(Paths.get("bar")), Optional.empty());
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("foo");
+        Files.write(file, Arrays.asList("bar"), StandardCharsets.UTF_8);
+
+        assertAll(() -> assertThrows(GitException.class, () -> testee.put(file, Paths.get("bar"))),
+                () -> assertThrows(GitException.class, () -> testee.put(file, Paths.get("bar/foo/baz"))));
+    }
+
+    @Test
+    @DisplayName("close() with bare after put() of unchanged content does not push")
+    void close_bareWithUnchangedPut_doNotPush(@Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                Optional.empty());
+        when(configuration.isBare()).thenReturn(true);
+        addFooFileToRepo(tempDir, Optional.empty(), Optional.empty());
+        Path remoteRef = tempDir.resolve("remote.git/refs/heads/master");
+        String ref = Files.readAllLines(remoteRef, StandardCharsets.UTF_8).get(0);
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("foo");
+        Files.write(file, Arrays.asList("test"), StandardCharsets.UTF_8);
+        testee.put(file, Paths.get("foo"));
+
+        testee.close();
+
+        assertEquals(ref, Files.readAllLines(remoteRef, StandardCharsets.UTF_8).get(0));
+    }
+
+    @ParameterizedTest(name = "branch {0}")
+    @ArgumentsSource(BranchArguments.class)
+    @DisplayName("close() with bare after put() on an empty remote does push")
+    void close_bareWithPutOnEmptyRemote_doPush(Optional<String> branch, @Root Path tempDir) throws Exception {
+        GitConfiguration configuration = createConfiguration(createRemoteRepo(tempDir), tempDir, Optional.empty(),
+                branch);
+        when(configuration.isBare()).thenReturn(true);
+        GitConnection testee = createTestee(configuration);
+        Path file = tempDir.resolve("foo");
+        Files.write(file, Arrays.asList("test"), StandardCharsets.UTF_8);
+        testee.put(file, Paths.get("foo"));
+
+        testee.close();
+
+        assertTrue(Files.exists(tempDir.resolve("remote.git/refs/heads/" + branch.orElse("master"))));
+    }
+
+    private void addChange(GitConnection testee, Path tempDir) throws IOException, GitException {
+        Path file = tempDir.resolve("change");
+        Files.write(file, Arrays.asList("" + new Random().nextLong()), StandardCharsets.UTF_8);
+        testee.put(file, Paths.get("foo"));
+    }
+
+    private static String metadata(String lastUpdated, String version) {
+        return "<metadata><groupId>foo</groupId><artifactId>bar</artifactId><versioning><release>" + version
+                + "</release><versions><version>" + version + "</version></versions><lastUpdated>" + lastUpdated
+                + "</lastUpdated></versioning></metadata>";
+    }
+
+    private void pushOtherFile(Path tempDir, String name, String content) throws IOException, ExecuteException {
+        Path otherWorkingDir = tempDir.resolve("other-clone");
+        Files.createDirectory(otherWorkingDir);
+        Executor executor = createExecutor();
+        executor.setWorkingDirectory(otherWorkingDir.toFile());
+        executor.execute(CommandLine.parse("git clone ../remote.git ."));
+        Files.write(otherWorkingDir.resolve(name), Arrays.asList(content), StandardCharsets.UTF_8);
+        executor.execute(CommandLine.parse("git add " + name));
+        executor.execute(CommandLine.parse("git commit -m 'other'"));
+        executor.execute(CommandLine.parse("git push"));
+    }
+
+    private void allowPartialClone(Path tempDir) throws IOException {
+        Executor executor = createExecutor();
+        executor.setWorkingDirectory(tempDir.resolve("remote.git").toFile());
+        executor.execute(CommandLine.parse("git config uploadpack.allowFilter true"));
+        executor.execute(CommandLine.parse("git config uploadpack.allowAnySHA1InWant true"));
     }
 
     private void addFooFileToRepo(Path tempDir, Optional<Path> pathInRepo, Optional<String> branch)
@@ -462,6 +1349,21 @@ public class GitConnectionTest {
         executor.execute(CommandLine.parse("git push origin master:" + branch.orElse("master")));
     }
 
+    private void addCommitToRepo(Path tempDir) throws IOException, ExecuteException {
+        Executor executor = createExecutor();
+        executor.setWorkingDirectory(tempDir.resolve("remote-init").toFile());
+        executor.execute(CommandLine.parse("git commit -m 'test' --allow-empty"));
+        executor.execute(CommandLine.parse("git push origin master"));
+    }
+
+    private int count(Iterable<?> iterable) {
+        int count = 0;
+        for (Iterator<?> iterator = iterable.iterator(); iterator.hasNext(); iterator.next()) {
+            count++;
+        }
+        return count;
+    }
+
     private GitConnection createTestee(Path tempDir) throws IOException {
         return createTestee(tempDir, Optional.empty());
     }
@@ -17,6 +17,7 @@ package com.github.jonasrutishauser.maven.wagon.git;
  * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
  */
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -27,8 +28,14 @@ import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.OptionalInt;
 
 import org.apache.maven.wagon.ConnectionException;
 import org.apache.maven.wagon.ResourceDoesNotExistException;
@@ -66,6 +73,29 @@ public class GitWagonTest {
         assertSame(expectedCall, exception);
     }
 
+    @Test
+    @DisplayName("openConnectionInternal() uses the server configuration where the URL does not set the option")
+    void openConnectionInternal_serverConfiguration() {
+        RuntimeException expectedCall = new RuntimeException("expectedCall");
+        GitWagon testee = new GitWagon() {
+
+            @Override
+            protected GitConnection openGitConnection(GitConfiguration configuration)
+                    throws GitCloneException, GitAuthenticationException {
+                assertEquals(OptionalInt.of(1000), configuration.getPostBuffer());
+                assertEquals(OptionalInt.of(42), configuration.getTimeout());
+                throw expectedCall;
+            }
+        };
+        testee.setPostBuffer(1000);
+        testee.setGitTimeout(10);
+
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> testee.connect(new Repository("foo", "git:test!?timeout=42")));
+
+        assertSame(expectedCall, exception);
+    }
+
     @Test
     @DisplayName("openConnectionInternal() with a GitCloneException on GitConnection.open() throws a ConnectionException")
     void openConnectionInternal_gitCloneException_throwsConnectionException() {
@@ -130,7 +160,7 @@ public class GitWagonTest {
             }
         };
         testee.connect(new Repository("foo", "git:test"));
-        doThrow(NoSuchResourceInGitException.class).when(gitConnection).getIfNewer(any(), any(), anyLong());
+        doThrow(NoSuchResourceInGitException.class).when(gitConnection).getIfNewer(any(), any(Path.class), anyLong());
 
         assertThrows(ResourceDoesNotExistException.class, () -> testee.getIfNewer("foo", new File("target"), 0));
     }
@@ -148,7 +178,7 @@ public class GitWagonTest {
             }
         };
         testee.connect(new Repository("foo", "git:test"));
-        doThrow(GitException.class).when(gitConnection).getIfNewer(any(), any(), anyLong());
+        doThrow(GitException.class).when(gitConnection).getIfNewer(any(), any(Path.class), anyLong());
 
         assertThrows(TransferFailedException.class, () -> testee.getIfNewer("foo", new File("target"), 0));
     }
@@ -186,7 +216,7 @@ public class GitWagonTest {
             }
         };
         testee.connect(new Repository("foo", "git:test"));
-        doThrow(NoSuchResourceInGitException.class).when(gitConnection).getIfNewer(any(), any(), anyLong());
+        doThrow(NoSuchResourceInGitException.class).when(gitConnection).getIfNewer(any(), any(Path.class), anyLong());
 
         assertThrows(ResourceDoesNotExistException.class, () -> testee.get("foo", new File("target")));
     }
@@ -204,11 +234,132 @@ public class GitWagonTest {
             }
         };
         testee.connect(new Repository("foo", "git:test"));
-        doThrow(GitException.class).when(gitConnection).getIfNewer(any(), any(), anyLong());
+        doThrow(GitException.class).when(gitConnection).getIfNewer(any(), any(Path.class), anyLong());
 
         assertThrows(TransferFailedException.class, () -> testee.get("foo", new File("target")));
     }
 
+    @Test
+    @DisplayName("getToStream() calls GitConnection.getIfNewer()")
+    void getToStream_callsGetIfNewerOnGitConnection() throws Exception {
+        GitConnection gitConnection = mock(GitConnection.class);
+        GitWagon testee = new GitWagon() {
+
+            @Override
+            protected GitConnection openGitConnection(GitConfiguration configuration)
+                    throws GitCloneException, GitAuthenticationException {
+                return gitConnection;
+            }
+        };
+        testee.connect(new Repository("foo", "git:test"));
+        OutputStream stream = new ByteArrayOutputStream();
+
+        testee.getToStream("foo", stream);
+
+        verify(gitConnection).getIfNewer(Paths.get("foo"), stream, Long.MIN_VALUE);
+    }
+
+    @Test
+    @DisplayName("getIfNewerToStream() calls GitConnection.getIfNewer()")
+    void getIfNewerToStream_callsGetIfNewerOnGitConnection() throws Exception {
+        GitConnection gitConnection = mock(GitConnection.class);
+        GitWagon testee = new GitWagon() {
+
+            @Override
+            protected GitConnection openGitConnection(GitConfiguration configuration)
+                    throws GitCloneException, GitAuthenticationException {
+                return gitConnection;
+            }
+        };
+        testee.connect(new Repository("foo", "git:test"));
+        OutputStream stream = new ByteArrayOutputStream();
+        doReturn(Boolean.TRUE).when(gitConnection).getIfNewer(Paths.get("foo"), stream, 42);
+
+        assertTrue(testee.getIfNewerToStream("foo", stream, 42));
+    }
+
+    @Test
+    @DisplayName("getIfNewerToStream() with a NoSuchResourceInGitException on GitConnection.getIfNewer() throws a ResourceDoesNotExistException")
+    void getIfNewerToStream_noSuchResourceInGitException_throwsResourceDoesNotExistException() throws Exception {
+        GitConnection gitConnection = mock(GitConnection.class);
+        GitWagon testee = new GitWagon() {
+
+            @Override
+            protected GitConnection openGitConnection(GitConfiguration configuration)
+                    throws GitCloneException, GitAuthenticationException {
+                return gitConnection;
+            }
+        };
+        testee.connect(new Repository("foo", "git:test"));
+        doThrow(NoSuchResourceInGitException.class).when(gitConnection).getIfNewer(any(),
+                any(OutputStream.class), anyLong());
+
+        assertThrows(ResourceDoesNotExistException.class,
+                () -> testee.getIfNewerToStream("foo", new ByteArrayOutputStream(), 0));
+    }
+
+    @Test
+    @DisplayName("getIfNewerToStream() with a GitException on GitConnection.getIfNewer() throws a TransferFailedException")
+    void getIfNewerToStream_gitException_throwsTransferFailedException() throws Exception {
+        GitConnection gitConnection = mock(GitConnection.class);
+        GitWagon testee = new GitWagon() {
+
+            @Override
+            protected GitConnection openGitConnection(GitConfiguration configuration)
+                    throws GitCloneException, GitAuthenticationException {
+                return gitConnection;
+            }
+        };
+        testee.connect(new Repository("foo", "git:test"));
+        doThrow(GitException.class).when(gitConnection).getIfNewer(any(), any(OutputStream.class), anyLong());
+
+        assertThrows(TransferFailedException.class,
+                () -> testee.getIfNewerToStream("foo", new ByteArrayOutputStream(), 0));
+    }
+
+    @Test
+    @DisplayName("putFromStream() calls GitConnection.put()")
+    @SuppressWarnings("deprecation")
+    void putFromStream_callsPutOnGitConnection() throws Exception {
+        GitConnection gitConnection = mock(GitConnection.class);
+        GitWagon testee = new GitWagon() {
+
+            @Override
+            protected GitConnection openGitConnection(GitConfiguration configuration)
+                    throws GitCloneException, GitAuthenticationException {
+                return gitConnection;
+            }
+        };
+        testee.connect(new Repository("foo", "git:test"));
+        InputStream stream = new ByteArrayInputStream(new byte[3]);
+
+        testee.putFromStream(stream, "foo");
+        testee.putFromStream(stream, "bar", 3, 0);
+
+        verify(gitConnection).put(stream, -1, Paths.get("foo"));
+        verify(gitConnection).put(stream, 3, Paths.get("bar"));
+    }
+
+    @Test
+    @DisplayName("putFromStream() with a GitException on GitConnection.put() throws a TransferFailedException")
+    @SuppressWarnings("deprecation")
+    void putFromStream_gitException_throwsTransferFailedException() throws Exception {
+        GitConnection gitConnection = mock(GitConnection.class);
+        GitWagon testee = new GitWagon() {
+
+            @Override
+            protected GitConnection openGitConnection(GitConfiguration configuration)
+                    throws GitCloneException, GitAuthenticationException {
+                return gitConnection;
+            }
+        };
+        testee.connect(new Repository("foo", "git:test"));
+        doThrow(GitException.class).when(gitConnection).put(any(), anyLong(), any());
+
+        assertThrows(TransferFailedException.class,
+                () -> testee.putFromStream(new ByteArrayInputStream(new byte[0]), "foo"));
+    }
+
     @Test
     @DisplayName("putDirectory() calls GitConnection.put()")
     void putDirectory_callsPutOnGitConnection() throws Exception {
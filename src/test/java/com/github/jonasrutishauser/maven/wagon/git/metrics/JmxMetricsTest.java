@@ -0,0 +1,62 @@
+package com.github.jonasrutishauser.maven.wagon.git.metrics;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("JmxMetrics")
+public class JmxMetricsTest {
+
+    private final MBeanServer server = MBeanServerFactory.newMBeanServer();
+
+    private final JmxMetrics testee = new JmxMetrics(server);
+
+    @Test
+    @DisplayName("record() publishes the statistics of the phase")
+    void record() throws Exception {
+        testee.record("https://example.org/repo.git", 1, Phase.LS_REMOTE, 1_000_000, 10, 2);
+        testee.retried("https://example.org/repo.git", 1, Phase.LS_REMOTE);
+
+        ObjectName name = new ObjectName(
+                "com.github.jonasrutishauser.maven.wagon.git:type=PhaseStatistics,url=\"https://example.org/repo.git\","
+                        + "phase=ls-remote");
+        assertAll(() -> assertEquals(Long.valueOf(1), server.getAttribute(name, "Count")),
+                () -> assertEquals(Long.valueOf(10), server.getAttribute(name, "Bytes")),
+                () -> assertEquals(Long.valueOf(2), server.getAttribute(name, "Objects")),
+                () -> assertEquals(Long.valueOf(1), server.getAttribute(name, "Retries")));
+    }
+
+    @Test
+    @DisplayName("record() with an already registered name still records")
+    void record_alreadyRegistered() throws Exception {
+        new JmxMetrics(server).record("foo", 1, Phase.FETCH, 1, 0, 0);
+
+        testee.record("foo", 1, Phase.FETCH, 1, 0, 0);
+
+        assertEquals(Long.valueOf(1), server.getAttribute(JmxMetrics.objectName("foo", Phase.FETCH), "Count"));
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.github.jonasrutishauser.maven.wagon.git.metrics;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.slf4j.Logger;
+
+@DisplayName("LoggingMetrics")
+public class LoggingMetricsTest {
+
+    private final Logger logger = mock(Logger.class);
+
+    private final LoggingMetrics testee = new LoggingMetrics(logger);
+
+    @Test
+    @DisplayName("closed() logs the summary of the connection")
+    void closed() {
+        when(logger.isDebugEnabled()).thenReturn(true);
+        testee.record("foo", 1, Phase.FETCH, 2_000_000, 1024, 3);
+        testee.record("foo", 1, Phase.PUSH, 1_000_000, 0, 1);
+        testee.retried("foo", 1, Phase.PUSH);
+        testee.record("bar", 2, Phase.FETCH, 1_000_000, 0, 0);
+        testee.record("foo", 3, Phase.FETCH, 1_000_000, 0, 0);
+
+        testee.closed("foo", 1);
+
+        ArgumentCaptor<String> message = ArgumentCaptor.forClass(String.class);
+        verify(logger).debug(message.capture());
+        assertEquals("git metrics of foo (connection 1): fetch 1x 2.0 ms (3 objects, 1024 bytes); "
+                + "push 1x 1.0 ms (1 objects, 1 retries)", message.getValue());
+    }
+
+    @Test
+    @DisplayName("closed() logs nothing if debug is disabled")
+    void closed_debugDisabled() {
+        testee.record("foo", 1, Phase.FETCH, 2_000_000, 1024, 3);
+
+        testee.closed("foo", 1);
+
+        verify(logger, never()).debug(anyString());
+    }
+
+}
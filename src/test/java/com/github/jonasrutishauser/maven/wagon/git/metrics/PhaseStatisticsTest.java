@@ -0,0 +1,72 @@
+package com.github.jonasrutishauser.maven.wagon.git.metrics;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("PhaseStatistics")
+public class PhaseStatisticsTest {
+
+    private final PhaseStatistics testee = new PhaseStatistics();
+
+    @Test
+    @DisplayName("record() sums up the measurements")
+    void record() {
+        testee.record(TimeUnit.MILLISECONDS.toNanos(3), 100, 1);
+        testee.record(TimeUnit.MILLISECONDS.toNanos(1), 20, 2);
+        testee.retried();
+
+        assertAll(() -> assertEquals(2, testee.getCount()), //
+                () -> assertEquals(4, testee.getTotalTimeMillis()), //
+                () -> assertEquals(2, testee.getMeanTimeMillis()), //
+                () -> assertEquals(3, testee.getMaxTimeMillis()), //
+                () -> assertEquals(120, testee.getBytes()), //
+                () -> assertEquals(3, testee.getObjects()), //
+                () -> assertEquals(1, testee.getRetries()));
+    }
+
+    @Test
+    @DisplayName("getLatencyHistogram() counts the executions per bucket")
+    void getLatencyHistogram() {
+        testee.record(TimeUnit.MICROSECONDS.toNanos(10), 0, 0);
+        testee.record(TimeUnit.MILLISECONDS.toNanos(1), 0, 0);
+        testee.record(TimeUnit.MILLISECONDS.toNanos(3), 0, 0);
+        testee.record(TimeUnit.MINUTES.toNanos(10), 0, 0);
+
+        long[] expected = new long[testee.getLatencyBucketLimitsMillis().length + 1];
+        expected[0] = 1;
+        expected[1] = 1;
+        expected[2] = 1;
+        expected[expected.length - 1] = 1;
+        assertArrayEquals(expected, testee.getLatencyHistogram());
+    }
+
+    @Test
+    @DisplayName("getMeanTimeMillis() without executions is 0")
+    void getMeanTimeMillis_empty() {
+        assertEquals(0, testee.getMeanTimeMillis());
+    }
+
+}
@@ -0,0 +1,67 @@
+package com.github.jonasrutishauser.maven.wagon.git.metrics;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers the recorded phases and their objects per URL (registered as service for the tests).
+ */
+public class RecordingMetrics implements GitMetrics {
+
+    private static final Map<String, List<String>> EVENTS = new ConcurrentHashMap<>();
+
+    private static final Map<String, Long> OBJECTS = new ConcurrentHashMap<>();
+
+    public static List<String> getEvents(String url) {
+        return EVENTS.getOrDefault(url, Collections.emptyList());
+    }
+
+    /**
+     * @return the total number of objects recorded for the phase
+     */
+    public static long getObjects(String url, Phase phase) {
+        return OBJECTS.getOrDefault(url + ' ' + phase.getName(), Long.valueOf(0)).longValue();
+    }
+
+    @Override
+    public void record(String url, long connection, Phase phase, long durationNanos, long bytes, long objects) {
+        add(url, phase.getName());
+        OBJECTS.merge(url + ' ' + phase.getName(), Long.valueOf(objects), Long::sum);
+    }
+
+    @Override
+    public void retried(String url, long connection, Phase phase) {
+        add(url, "retried " + phase.getName());
+    }
+
+    @Override
+    public void closed(String url, long connection) {
+        add(url, "closed");
+    }
+
+    private static void add(String url, String event) {
+        List<String> events = EVENTS.computeIfAbsent(url, key -> Collections.synchronizedList(new ArrayList<>()));
+        events.add(event);
+    }
+
+}
@@ -0,0 +1,106 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.github.jonasrutishauser.maven.wagon.git.junit.extension.TemporaryFolderExtension;
+import com.github.jonasrutishauser.maven.wagon.git.junit.extension.TemporaryFolderExtension.Root;
+
+@ExtendWith(TemporaryFolderExtension.class)
+@DisplayName("BackgroundDeleter")
+public class BackgroundDeleterTest {
+
+    private final BackgroundDeleter testee = new BackgroundDeleter(2);
+
+    @Test
+    @DisplayName("delete() removes the directory immediately and its content in the background")
+    void delete(@Root Path tempDir) throws IOException, InterruptedException {
+        Path directory = createTree(tempDir.resolve("work"));
+
+        testee.delete(directory);
+
+        assertAll(() -> assertFalse(Files.exists(directory)),
+                () -> assertTrue(testee.awaitPending(Duration.ofSeconds(30))),
+                () -> assertTrue(isEmpty(tempDir)));
+    }
+
+    @Test
+    @DisplayName("delete() of a missing directory does nothing")
+    void delete_missing(@Root Path tempDir) throws InterruptedException {
+        testee.delete(tempDir.resolve("work"));
+
+        assertTrue(testee.awaitPending(Duration.ofSeconds(30)));
+    }
+
+    @Test
+    @DisplayName("delete() removes left over trash next to the directory")
+    void delete_sweepsLeftOverTrash(@Root Path tempDir) throws IOException, InterruptedException {
+        Path leftOver = createTree(tempDir.resolve("wagon-git-trash-left-over"));
+        Files.setLastModifiedTime(leftOver,
+                FileTime.from(Instant.now().minus(BackgroundDeleter.STALE_TRASH_AGE).minusSeconds(60)));
+        Path other = createTree(tempDir.resolve("other"));
+
+        testee.delete(createTree(tempDir.resolve("work")));
+
+        assertAll(() -> assertTrue(testee.awaitPending(Duration.ofSeconds(30))),
+                () -> assertFalse(Files.exists(leftOver)),
+                () -> assertTrue(Files.exists(other.resolve("foo/bar"))));
+    }
+
+    @Test
+    @DisplayName("delete() keeps recent trash, which may still be deleted by another JVM")
+    void delete_keepsRecentTrash(@Root Path tempDir) throws IOException, InterruptedException {
+        Path recent = createTree(tempDir.resolve("wagon-git-trash-recent"));
+
+        testee.delete(createTree(tempDir.resolve("work")));
+
+        assertAll(() -> assertTrue(testee.awaitPending(Duration.ofSeconds(30))),
+                () -> assertTrue(Files.exists(recent.resolve("foo/bar"))));
+    }
+
+    private static Path createTree(Path directory) throws IOException {
+        Files.createDirectories(directory.resolve("foo"));
+        Files.write(directory.resolve("foo/bar"), Arrays.asList("test"), StandardCharsets.UTF_8);
+        Files.write(directory.resolve("baz"), Arrays.asList("test"), StandardCharsets.UTF_8);
+        return directory;
+    }
+
+    private static boolean isEmpty(Path directory) throws IOException {
+        try (Stream<Path> entries = Files.list(directory)) {
+            return !entries.findAny().isPresent();
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.OptionalInt;
+import java.util.TimeZone;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.github.jonasrutishauser.maven.wagon.git.junit.extension.TemporaryFolderExtension;
+import com.github.jonasrutishauser.maven.wagon.git.junit.extension.TemporaryFolderExtension.Root;
+
+@ExtendWith(TemporaryFolderExtension.class)
+@DisplayName("CommitTimeIndex")
+public class CommitTimeIndexTest {
+
+    private Git git;
+
+    private Path workTree;
+
+    @BeforeEach
+    void createRepository(@Root Path tempDir) throws GitAPIException {
+        workTree = tempDir.resolve("work");
+        git = Git.init().setDirectory(workTree.toFile()).call();
+    }
+
+    @AfterEach
+    void closeRepository() {
+        git.close();
+    }
+
+    @Test
+    @DisplayName("getCommitTime() returns the time of the last change of a file")
+    void getCommitTime_file() throws Exception {
+        commit(1000, "foo", "bar/baz");
+        commit(2000, "foo");
+        RevCommit head = commit(3000, "other");
+
+        try (CommitTimeIndex testee = new CommitTimeIndex(git.getRepository(), head)) {
+            assertAll(() -> assertEquals(OptionalInt.of(2000), testee.getCommitTime("foo")),
+                    () -> assertEquals(OptionalInt.of(1000), testee.getCommitTime("bar/baz")),
+                    () -> assertEquals(OptionalInt.of(3000), testee.getCommitTime("other")));
+        }
+    }
+
+    @Test
+    @DisplayName("getCommitTime() returns the time of the last change below a directory")
+    void getCommitTime_directory() throws Exception {
+        commit(1000, "bar/baz", "bar-other");
+        commit(2000, "bar/foo/baz");
+        RevCommit head = commit(3000, "bar-other");
+
+        try (CommitTimeIndex testee = new CommitTimeIndex(git.getRepository(), head)) {
+            assertAll(() -> assertEquals(OptionalInt.of(2000), testee.getCommitTime("bar")),
+                    () -> assertEquals(OptionalInt.of(3000), testee.getCommitTime(".")));
+        }
+    }
+
+    @Test
+    @DisplayName("getCommitTime() of an unknown path is empty")
+    void getCommitTime_unknown() throws Exception {
+        RevCommit head = commit(1000, "foo");
+
+        try (CommitTimeIndex testee = new CommitTimeIndex(git.getRepository(), head)) {
+            assertEquals(OptionalInt.empty(), testee.getCommitTime("bar"));
+        }
+    }
+
+    private RevCommit commit(long time, String... files) throws IOException, GitAPIException {
+        for (String file : files) {
+            Path path = workTree.resolve(file);
+            Files.createDirectories(path.getParent());
+            Files.write(path, Arrays.asList(time + file), StandardCharsets.UTF_8);
+            git.add().addFilepattern(file).call();
+        }
+        PersonIdent person = new PersonIdent("test", "test@example.org", new Date(time * 1000),
+                TimeZone.getTimeZone("UTC"));
+        return git.commit().setMessage("test").setAuthor(person).setCommitter(person).call();
+    }
+
+}
@@ -0,0 +1,95 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import com.github.jonasrutishauser.maven.wagon.git.junit.extension.TemporaryFolderExtension;
+import com.github.jonasrutishauser.maven.wagon.git.junit.extension.TemporaryFolderExtension.Root;
+
+@ExtendWith(TemporaryFolderExtension.class)
+@DisplayName("FileTransfer")
+public class FileTransferTest {
+
+    private static final FileTime LAST_MODIFIED = FileTime.from(Instant.parse("2005-04-07T22:13:13Z"));
+
+    @ParameterizedTest(name = "{0}")
+    @EnumSource(FileTransfer.class)
+    @DisplayName("transfer() replaces the target with the content of the source")
+    void transfer_content(FileTransfer testee, @Root Path tempDir) throws IOException {
+        Path source = createSource(tempDir);
+        Path target = tempDir.resolve("target");
+        Files.write(target, Arrays.asList("old content"), StandardCharsets.UTF_8);
+
+        testee.transfer(source, target, true);
+
+        assertAll(() -> assertEquals(Arrays.asList("test"), Files.readAllLines(target, StandardCharsets.UTF_8)),
+                () -> assertEquals(LAST_MODIFIED, Files.getLastModifiedTime(target)),
+                () -> assertEquals(testee == FileTransfer.LINK, Files.isSameFile(source, target)));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @EnumSource(FileTransfer.class)
+    @DisplayName("transfer() without preserving attributes")
+    void transfer_withoutAttributes(FileTransfer testee, @Root Path tempDir) throws IOException {
+        Path source = createSource(tempDir);
+        Path target = tempDir.resolve("target");
+
+        testee.transfer(source, target, false);
+
+        assertEquals(Arrays.asList("test"), Files.readAllLines(target, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("transfer() onto a linked target does not modify the other link")
+    void transfer_ontoLink(@Root Path tempDir) throws IOException {
+        Path source = createSource(tempDir);
+        Path target = tempDir.resolve("target");
+        FileTransfer.LINK.transfer(source, target, true);
+        Path other = tempDir.resolve("other");
+        Files.write(other, Arrays.asList("other"), StandardCharsets.UTF_8);
+
+        FileTransfer.CHANNEL.transfer(other, target, false);
+
+        assertAll(() -> assertEquals(Arrays.asList("test"), Files.readAllLines(source, StandardCharsets.UTF_8)),
+                () -> assertEquals(Arrays.asList("other"), Files.readAllLines(target, StandardCharsets.UTF_8)));
+    }
+
+    private static Path createSource(Path tempDir) throws IOException {
+        Path source = tempDir.resolve("source");
+        Files.write(source, Arrays.asList("test"), StandardCharsets.UTF_8);
+        Files.setLastModifiedTime(source, LAST_MODIFIED);
+        return source;
+    }
+
+}
@@ -17,65 +17,60 @@ package com.github.jonasrutishauser.maven.wagon.git.util;
  * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
  */
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.verifyNoMoreInteractions;
 
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jgit.lib.ProgressMonitor;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
 
-import com.github.jonasrutishauser.maven.wagon.git.util.LoggerProgressMonitor;
-
 @DisplayName("LoggerProgressMontor")
 public class LoggerProgressMonitorTest {
 
     private final Logger logger = mock(Logger.class);
 
-    private final LoggerProgressMonitor testee = new LoggerProgressMonitor(logger);
+    private long nanos;
 
-    @DisplayName("with debug disabled")
-    @Nested
-    public class DebugDisabled {
+    private int clockCalls;
 
-        @Test
-        @DisplayName("logs nothing onUpdate(String, int)")
-        void nothingOnUpdate() {
-            testee.onUpdate("task", 42);
+    private long bytes;
 
-            verify(logger, atLeast(0)).isDebugEnabled();
-            verifyNoMoreInteractions(logger);
-        }
+    private final LoggerProgressMonitor testee = new LoggerProgressMonitor(logger, () -> {
+        clockCalls++;
+        return nanos;
+    }, null);
 
-        @Test
-        @DisplayName("logs nothing onUpdate(String, int, int, int)")
-        void nothingOnUpdatePercent() {
-            testee.onUpdate("task", 42, 84, 50);
+    private final LoggerProgressMonitor byteCountingTestee = new LoggerProgressMonitor(logger, () -> nanos,
+            () -> bytes);
 
-            verify(logger, atLeast(0)).isDebugEnabled();
-            verifyNoMoreInteractions(logger);
-        }
-
-        @Test
-        @DisplayName("logs nothing onEndTask(String, int)")
-        void nothingOnEndTask() {
-            testee.onEndTask("task", 42);
+    private void elapse(long millis) {
+        nanos += TimeUnit.MILLISECONDS.toNanos(millis);
+    }
 
-            verify(logger, atLeast(0)).isDebugEnabled();
-            verifyNoMoreInteractions(logger);
-        }
+    @DisplayName("with debug disabled")
+    @Nested
+    public class DebugDisabled {
 
         @Test
-        @DisplayName("logs nothing onEndTask(String, int, int, int)")
-        void nothingOnEndTaskPercent() {
-            testee.onEndTask("task", 42, 84, 50);
+        @DisplayName("logs nothing and does not read the clock")
+        void nothing() {
+            testee.beginTask("task", 84);
+            elapse(2000);
+            testee.update(42);
+            testee.endTask();
 
             verify(logger, atLeast(0)).isDebugEnabled();
             verifyNoMoreInteractions(logger);
+            assertEquals(0, clockCalls);
         }
     }
 
@@ -89,44 +84,83 @@ public class LoggerProgressMonitorTest {
         }
 
         @Test
-        @DisplayName("correct log onUpdate(String, int)")
-        void onUpdate() {
-            testee.onUpdate("task", 3);
+        @DisplayName("logs nothing on update() within the interval")
+        void nothingWithinInterval() {
+            testee.beginTask("task", ProgressMonitor.UNKNOWN);
+            elapse(999);
+            testee.update(3);
 
-            verify(logger).debug("task:                   3");
+            verify(logger, atLeast(0)).isDebugEnabled();
+            verifyNoMoreInteractions(logger);
         }
 
         @Test
-        @DisplayName("correct log onUpdate(String, int, int, int)")
-        void onUpdatePercent() {
-            testee.onUpdate("foo", 2, 142, 5);
+        @DisplayName("correct log on update() after the interval with unknown total")
+        void updateUnknownTotal() {
+            testee.beginTask("task", ProgressMonitor.UNKNOWN);
+            elapse(2000);
+            testee.update(3);
 
-            verify(logger).debug("foo:                      5% (  2/142)");
+            verify(logger).debug("task:                   3, 1 objects/s");
         }
 
         @Test
-        @DisplayName("logs nothing onUpdate(String, int, int, int) if ended")
-        void nothingOnUpdatePercentEnded() {
-            testee.onUpdate("task", 42, 42, 100);
+        @DisplayName("correct log on update() after the interval with the estimated remaining time")
+        void updatePercent() {
+            testee.beginTask("foo", 100);
+            elapse(1000);
+            testee.update(25);
+
+            verify(logger).debug("foo:                    25% (25/100), 25 objects/s, ETA 3.0 s");
+        }
 
+        @Test
+        @DisplayName("logs at most once per interval")
+        void oncePerInterval() {
+            testee.beginTask("foo", 100);
+            elapse(1000);
+            testee.update(25);
+            elapse(500);
+            testee.update(25);
+
+            verify(logger).debug("foo:                    25% (25/100), 25 objects/s, ETA 3.0 s");
             verify(logger, atLeast(0)).isDebugEnabled();
             verifyNoMoreInteractions(logger);
         }
 
         @Test
-        @DisplayName("correct log onEndTask(String, int)")
-        void onEndTask() {
-            testee.onEndTask("bar", 42);
-
-            verify(logger).debug("bar:                    42");
+        @DisplayName("correct log on endTask() with unknown total")
+        void endTask() {
+            testee.beginTask("bar", ProgressMonitor.UNKNOWN);
+            testee.update(42);
+            elapse(2000);
+            testee.endTask();
+
+            verify(logger).debug("bar:                    42, 21 objects/s, 2.0 s");
         }
 
         @Test
-        @DisplayName("correct log onEndTask(String, int, int, int)")
-        void onEndTaskPercent() {
-            testee.onEndTask("test", 42, 42, 100);
+        @DisplayName("correct log on endTask()")
+        void endTaskPercent() {
+            testee.beginTask("test", 42);
+            testee.update(42);
+            elapse(500);
+            testee.endTask();
+
+            verify(logger).debug("test:                   100% (42/42), 84 objects/s, 0.5 s");
+        }
 
-            verify(logger).debug("test:                   100% (42/42)");
+        @Test
+        @DisplayName("correct log on endTask() with a byte counter")
+        void endTaskBytes() {
+            bytes = 1000;
+            byteCountingTestee.beginTask("test", 42);
+            byteCountingTestee.update(42);
+            bytes += 3 * 1024 * 1024;
+            elapse(2000);
+            byteCountingTestee.endTask();
+
+            verify(logger).debug("test:                   100% (42/42), 21 objects/s, 1.5 MiB/s, 2.0 s");
         }
     }
 
@@ -0,0 +1,166 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+@DisplayName("MavenMetadataMerger")
+public class MavenMetadataMergerTest {
+
+    private final MavenMetadataMerger testee = new MavenMetadataMerger(
+            Clock.fixed(Instant.parse("2020-01-02T03:04:05Z"), ZoneOffset.UTC));
+
+    @Test
+    @DisplayName("merge() of artifact metadata merges the versions")
+    void merge_versions() throws Exception {
+        byte[] base = artifactMetadata("20200101000000", "1.1", "1.0", "1.1");
+        byte[] ours = artifactMetadata("20200101000002", "1.2", "1.0", "1.1", "1.2");
+        byte[] theirs = artifactMetadata("20200101000001", "2.0", "1.0", "1.1", "2.0");
+
+        Document result = parse(testee.merge(Optional.of(base), ours, theirs));
+
+        assertAll(() -> assertEquals(List.of("1.0", "1.1", "1.2", "2.0"), texts(result, "version")),
+                () -> assertEquals("1.2", text(result, "release")),
+                () -> assertEquals("20200102030405", text(result, "lastUpdated")));
+    }
+
+    @Test
+    @DisplayName("merge() takes the single values of the newer document")
+    void merge_newerWins() throws Exception {
+        byte[] ours = artifactMetadata("20200101000001", "1.2", "1.2");
+        byte[] theirs = artifactMetadata("20200101000002", "2.0", "2.0");
+
+        Document result = parse(testee.merge(Optional.empty(), ours, theirs));
+
+        assertAll(() -> assertEquals(List.of("2.0", "1.2"), texts(result, "version")),
+                () -> assertEquals("2.0", text(result, "release")));
+    }
+
+    @Test
+    @DisplayName("merge() keeps versions removed on one side removed")
+    void merge_removed() throws Exception {
+        byte[] base = artifactMetadata("20200101000000", "1.1", "1.0", "1.1");
+        byte[] ours = artifactMetadata("20200101000002", "1.2", "1.1", "1.2");
+        byte[] theirs = artifactMetadata("20200101000001", "1.1", "1.0");
+
+        Document result = parse(testee.merge(Optional.of(base), ours, theirs));
+
+        assertEquals(List.of("1.2"), texts(result, "version"));
+    }
+
+    @Test
+    @DisplayName("merge() of snapshot metadata keeps the newest snapshot version per classifier and extension")
+    void merge_snapshotVersions() throws Exception {
+        byte[] ours = snapshotMetadata("20200101000002", "jar", "1.0-20200101.000002-2", "pom",
+                "1.0-20200101.000002-2");
+        byte[] theirs = snapshotMetadata("20200101000001", "jar", "1.0-20200101.000001-1", "war",
+                "1.0-20200101.000001-1");
+
+        Document result = parse(testee.merge(Optional.empty(), ours, theirs));
+
+        assertAll(() -> assertEquals(List.of("jar", "pom", "war"), texts(result, "extension")),
+                () -> assertEquals(List.of("1.0-20200101.000002-2", "1.0-20200101.000002-2", "1.0-20200101.000001-1"),
+                        texts(result, "value")));
+    }
+
+    @Test
+    @DisplayName("merge() of group metadata merges the plugins")
+    void merge_plugins() throws Exception {
+        byte[] ours = ("<metadata><plugins><plugin><name>Foo</name><prefix>foo</prefix>"
+                + "<artifactId>foo-maven-plugin</artifactId></plugin></plugins></metadata>")
+                        .getBytes(StandardCharsets.UTF_8);
+        byte[] theirs = ("<metadata><plugins><plugin><name>Bar</name><prefix>bar</prefix>"
+                + "<artifactId>bar-maven-plugin</artifactId></plugin></plugins></metadata>")
+                        .getBytes(StandardCharsets.UTF_8);
+
+        Document result = parse(testee.merge(Optional.empty(), ours, theirs));
+
+        assertEquals(List.of("foo", "bar"), texts(result, "prefix"));
+    }
+
+    @Test
+    @DisplayName("merge() of an invalid document throws IOException")
+    void merge_invalid() throws Exception {
+        byte[] ours = artifactMetadata("20200101000001", "1.2", "1.2");
+
+        assertThrows(IOException.class,
+                () -> testee.merge(Optional.empty(), ours, "<metadata>".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static byte[] artifactMetadata(String lastUpdated, String release, String... versions) {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<metadata>\n"
+                + "  <groupId>foo</groupId>\n  <artifactId>bar</artifactId>\n  <versioning>\n    <latest>" + release
+                + "</latest>\n    <release>" + release + "</release>\n    <versions>\n");
+        for (String version : versions) {
+            xml.append("      <version>").append(version).append("</version>\n");
+        }
+        xml.append("    </versions>\n    <lastUpdated>").append(lastUpdated)
+                .append("</lastUpdated>\n  </versioning>\n</metadata>\n");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] snapshotMetadata(String lastUpdated, String... extensionsAndValues) {
+        StringBuilder xml = new StringBuilder("<metadata><groupId>foo</groupId><artifactId>bar</artifactId>"
+                + "<version>1.0-SNAPSHOT</version><versioning><lastUpdated>" + lastUpdated
+                + "</lastUpdated><snapshotVersions>");
+        for (int i = 0; i < extensionsAndValues.length; i += 2) {
+            xml.append("<snapshotVersion><extension>").append(extensionsAndValues[i]).append("</extension><value>")
+                    .append(extensionsAndValues[i + 1]).append("</value><updated>").append(lastUpdated)
+                    .append("</updated></snapshotVersion>");
+        }
+        xml.append("</snapshotVersions></versioning></metadata>");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Document parse(byte[] content) throws Exception {
+        return DocumentBuilderFactory.newInstance().newDocumentBuilder().parse(new ByteArrayInputStream(content));
+    }
+
+    private static String text(Document document, String name) {
+        return document.getElementsByTagName(name).item(0).getTextContent();
+    }
+
+    private static List<String> texts(Document document, String name) {
+        NodeList nodes = document.getElementsByTagName(name);
+        List<String> texts = new ArrayList<>();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            texts.add(nodes.item(i).getTextContent());
+        }
+        return texts;
+    }
+
+}
@@ -0,0 +1,164 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+
+import com.github.jonasrutishauser.maven.wagon.git.junit.extension.TemporaryFolderExtension;
+import com.github.jonasrutishauser.maven.wagon.git.junit.extension.TemporaryFolderExtension.Root;
+
+@ExtendWith(TemporaryFolderExtension.class)
+@DisplayName("MetadataTreeMerger")
+public class MetadataTreeMergerTest {
+
+    private static final String METADATA = "foo/" + MavenMetadataMerger.FILE_NAME;
+
+    private Git git;
+
+    private ObjectReader reader;
+
+    private ObjectInserter inserter;
+
+    private MetadataTreeMerger testee;
+
+    @BeforeEach
+    void createRepository(@Root Path tempDir) throws GitAPIException {
+        git = Git.init().setBare(true).setDirectory(tempDir.resolve("repo").toFile()).call();
+        reader = git.getRepository().newObjectReader();
+        inserter = git.getRepository().newObjectInserter();
+        testee = new MetadataTreeMerger(reader, inserter);
+    }
+
+    @AfterEach
+    void closeRepository() {
+        inserter.close();
+        reader.close();
+        git.close();
+    }
+
+    @Test
+    @DisplayName("merge() merges the metadata changed on both sides and regenerates the existing checksums")
+    void merge() throws Exception {
+        ObjectId base = tree(METADATA, metadata("1.0"), "other", "base");
+        ObjectId head = tree(METADATA, metadata("1.0", "1.1"), METADATA + ".sha1", "head", "other", "head");
+        ObjectId remote = tree(METADATA, metadata("1.0", "2.0"), "other", "base");
+
+        Map<String, ObjectId> result = testee.merge(base, head, remote);
+
+        assertAll(() -> assertEquals(List.of(METADATA, METADATA + ".sha1"), List.copyOf(result.keySet())),
+                () -> assertTrue(content(result.get(METADATA)).contains("<version>1.1</version>")),
+                () -> assertTrue(content(result.get(METADATA)).contains("<version>2.0</version>")),
+                () -> assertEquals(40, content(result.get(METADATA + ".sha1")).length()));
+    }
+
+    @Test
+    @DisplayName("merge() ignores metadata changed on one side only")
+    void merge_changedOnOneSide() throws Exception {
+        ObjectId base = tree(METADATA, metadata("1.0"));
+        ObjectId head = tree(METADATA, metadata("1.0", "1.1"));
+
+        assertEquals(Map.of(), testee.merge(base, head, base));
+    }
+
+    @Test
+    @DisplayName("changedOnBothSides() returns the blobs of the files changed on both sides")
+    void changedOnBothSides() throws Exception {
+        ObjectId base = tree("foo", "base", "bar", "base");
+        ObjectId head = tree("foo", "head", "bar", "head");
+        ObjectId remote = tree("foo", "remote", "bar", "base");
+
+        assertEquals(List.of(blob("base"), blob("head"), blob("remote")),
+                testee.changedOnBothSides(base, head, remote));
+    }
+
+    @Test
+    @DisplayName("withBlobs() replaces the blobs in the tree")
+    void withBlobs() throws Exception {
+        ObjectId tree = tree("foo", "foo", "bar", "bar");
+
+        ObjectId result = testee.withBlobs(tree, Map.of("foo", blob("merged")));
+
+        try (TreeWalk treeWalk = TreeWalk.forPath(reader, "foo", result)) {
+            assertEquals(blob("merged"), treeWalk.getObjectId(0));
+        }
+        try (TreeWalk treeWalk = TreeWalk.forPath(reader, "bar", result)) {
+            assertEquals(blob("bar"), treeWalk.getObjectId(0));
+        }
+    }
+
+    private ObjectId tree(String... pathsAndContents) throws IOException {
+        DirCache index = DirCache.newInCore();
+        DirCacheBuilder builder = index.builder();
+        for (int i = 0; i < pathsAndContents.length; i += 2) {
+            DirCacheEntry entry = new DirCacheEntry(pathsAndContents[i]);
+            entry.setFileMode(FileMode.REGULAR_FILE);
+            entry.setObjectId(blob(pathsAndContents[i + 1]));
+            builder.add(entry);
+        }
+        builder.finish();
+        ObjectId tree = index.writeTree(inserter);
+        inserter.flush();
+        return tree;
+    }
+
+    private ObjectId blob(String content) throws IOException {
+        ObjectId blob = inserter.insert(Constants.OBJ_BLOB, content.getBytes(StandardCharsets.UTF_8));
+        inserter.flush();
+        return blob;
+    }
+
+    private String content(ObjectId blob) throws IOException {
+        inserter.flush();
+        return new String(reader.open(blob, Constants.OBJ_BLOB).getBytes(), StandardCharsets.UTF_8);
+    }
+
+    private static String metadata(String... versions) {
+        StringBuilder metadata = new StringBuilder("<metadata><groupId>foo</groupId><artifactId>foo</artifactId>"
+                + "<versioning><lastUpdated>20200101000000</lastUpdated><versions>");
+        for (String version : versions) {
+            metadata.append("<version>").append(version).append("</version>");
+        }
+        return metadata.append("</versions></versioning></metadata>").toString();
+    }
+
+}
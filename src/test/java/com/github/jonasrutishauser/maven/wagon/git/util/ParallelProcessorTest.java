@@ -0,0 +1,77 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+@DisplayName("ParallelProcessor")
+public class ParallelProcessorTest {
+
+    @DisplayName("process() returns the results in the order of the items")
+    @ParameterizedTest(name = "parallelism {0}")
+    @ValueSource(ints = {1, 4})
+    void process_ordered(int parallelism) throws IOException {
+        ParallelProcessor testee = new ParallelProcessor(parallelism);
+
+        List<Integer> result = testee.process(Arrays.asList(5, 1, 3, 2, 4), item -> {
+            sleep(item.intValue());
+            return item * 10;
+        });
+
+        assertEquals(Arrays.asList(50, 10, 30, 20, 40), result);
+    }
+
+    @DisplayName("process() throws the exception of the first failed item")
+    @ParameterizedTest(name = "parallelism {0}")
+    @ValueSource(ints = {1, 4})
+    void process_failure(int parallelism) {
+        ParallelProcessor testee = new ParallelProcessor(parallelism);
+
+        IOException exception = assertThrows(IOException.class,
+                () -> testee.process(Arrays.asList(3, 1, 2, 4), item -> {
+                    sleep(5 - item.intValue());
+                    if (item.intValue() % 2 == 0) {
+                        throw new IOException("failed " + item);
+                    }
+                    return item;
+                }));
+
+        assertAll(() -> assertEquals("failed 2", exception.getMessage()),
+                () -> assertEquals(parallelism == 1 ? 0 : 1, exception.getSuppressed().length));
+    }
+
+    private static void sleep(int millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        }
+    }
+
+}
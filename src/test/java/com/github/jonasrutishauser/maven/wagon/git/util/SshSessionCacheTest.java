@@ -0,0 +1,148 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+
+import java.io.IOException;
+
+import org.eclipse.jgit.transport.RemoteSession;
+import org.eclipse.jgit.transport.SshSessionFactory;
+import org.eclipse.jgit.transport.SshTransport;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.URIish;
+import org.eclipse.jgit.util.FS;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("SshSessionCache")
+public class SshSessionCacheTest {
+
+    private final SshSessionFactory delegate = mock(SshSessionFactory.class);
+
+    private final RemoteSession session = mock(RemoteSession.class);
+
+    private final Process process = mock(Process.class);
+
+    private final SshSessionCache testee = new SshSessionCache(delegate);
+
+    private RemoteSession getSession(String uri) throws Exception {
+        return testee.getSession(new URIish(uri), null, FS.DETECTED, 0);
+    }
+
+    private void givenSession() throws Exception {
+        doReturn(session).when(delegate).getSession(any(), any(), any(), anyInt());
+        doReturn(process).when(session).exec(any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("configure sets the cache as session factory of ssh transports")
+    void configure() {
+        SshTransport transport = mock(SshTransport.class);
+
+        testee.configure(transport);
+
+        verify(transport).setSshSessionFactory(testee);
+    }
+
+    @Test
+    @DisplayName("configure ignores other transports")
+    void configure_otherTransport() {
+        Transport transport = mock(Transport.class);
+
+        testee.configure(transport);
+
+        verifyNoInteractions(transport);
+    }
+
+    @Test
+    @DisplayName("getSession reuses the session of the same remote")
+    void getSession_reused() throws Exception {
+        givenSession();
+
+        RemoteSession first = getSession("ssh://git@example.org/first.git");
+        testee.releaseSession(first);
+        first.disconnect();
+        RemoteSession second = getSession("ssh://git@example.org/second.git");
+
+        assertSame(first, second);
+        verify(delegate).getSession(any(), any(), any(), anyInt());
+        verify(delegate, never()).releaseSession(any());
+        verify(session, never()).disconnect();
+    }
+
+    @Test
+    @DisplayName("getSession opens a session per remote host")
+    void getSession_otherHost() throws Exception {
+        givenSession();
+
+        getSession("ssh://git@example.org/repo.git");
+        getSession("ssh://git@example.com/repo.git");
+
+        verify(delegate, times(2)).getSession(any(), any(), any(), anyInt());
+    }
+
+    @Test
+    @DisplayName("close releases the sessions")
+    void close() throws Exception {
+        givenSession();
+        getSession("ssh://git@example.org/repo.git");
+
+        testee.close();
+
+        verify(delegate).releaseSession(session);
+    }
+
+    @Test
+    @DisplayName("exec on a reused session reconnects once")
+    void exec_reconnect() throws Exception {
+        givenSession();
+        RemoteSession cached = getSession("ssh://git@example.org/repo.git");
+        cached.exec("git-upload-pack", 0);
+        RemoteSession newSession = mock(RemoteSession.class);
+        doThrow(new IOException("session is down")).when(session).exec(any(), anyInt());
+        doReturn(newSession).when(delegate).getSession(any(), any(), any(), anyInt());
+        doReturn(process).when(newSession).exec(any(), anyInt());
+
+        assertSame(process, cached.exec("git-receive-pack", 0));
+        verify(delegate).releaseSession(session);
+        verify(newSession).exec(eq("git-receive-pack"), anyInt());
+    }
+
+    @Test
+    @DisplayName("exec on a new session fails without reconnecting")
+    void exec_newSessionFails() throws Exception {
+        givenSession();
+        doThrow(new IOException("failed")).when(session).exec(any(), anyInt());
+        RemoteSession cached = getSession("ssh://git@example.org/repo.git");
+
+        assertThrows(IOException.class, () -> cached.exec("git-upload-pack", 0));
+        verify(delegate).getSession(any(), any(), any(), anyInt());
+    }
+
+}
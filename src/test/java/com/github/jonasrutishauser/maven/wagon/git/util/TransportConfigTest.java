@@ -0,0 +1,113 @@
+package com.github.jonasrutishauser.maven.wagon.git.util;
+
+/*
+ * Copyright (C) 2017 Jonas Rutishauser
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation version 3 of the License.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ * 
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with this program.
+ * If not, see <http://www.gnu.org/licenses/lgpl-3.0.txt>.
+ */
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import java.util.Optional;
+import java.util.OptionalInt;
+
+import org.eclipse.jgit.transport.RemoteSession;
+import org.eclipse.jgit.transport.SshSessionFactory;
+import org.eclipse.jgit.transport.SshTransport;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.TransportHttp;
+import org.eclipse.jgit.transport.URIish;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("TransportConfig")
+public class TransportConfigTest {
+
+    private final SshSessionFactory sshSessionFactory = mock(SshSessionFactory.class);
+
+    private final SshSessionCache sshSessions = new SshSessionCache(sshSessionFactory);
+
+    private final TransportConfig testee = new TransportConfig(sshSessions, Optional.of("user"),
+            Optional.of("secret"), OptionalInt.of(42));
+
+    /**
+     * Spy of a real transport (a mock would initialize {@link TransportHttp} before {@link Transport}, which then
+     * registers no HTTP protocol).
+     */
+    private TransportHttp httpTransport(String uri) throws Exception {
+        return (TransportHttp) spy(Transport.open(new URIish(uri)));
+    }
+
+    @Test
+    @DisplayName("configure() lets ssh transports reuse the cached sessions")
+    void configure_ssh() {
+        SshTransport transport = mock(SshTransport.class);
+
+        testee.configure(transport);
+
+        verify(transport).setSshSessionFactory(sshSessions);
+        verify(transport).setTimeout(42);
+    }
+
+    @Test
+    @DisplayName("configure() sets the timeout and preemptive authentication of https transports")
+    void configure_https() throws Exception {
+        TransportHttp transport = httpTransport("https://example.org/repo.git");
+
+        testee.configure(transport);
+
+        verify(transport).setTimeout(42);
+        verify(transport).setPreemptiveBasicAuthentication("user", "secret");
+    }
+
+    @Test
+    @DisplayName("configure() does not send the credentials unencrypted before they are requested")
+    void configure_http() throws Exception {
+        TransportHttp transport = httpTransport("http://example.org/repo.git");
+
+        testee.configure(transport);
+
+        verify(transport, never()).setPreemptiveBasicAuthentication(anyString(), anyString());
+    }
+
+    @Test
+    @DisplayName("configure() without credentials does not authenticate preemptively")
+    void configure_withoutCredentials() throws Exception {
+        TransportHttp transport = httpTransport("https://example.org/repo.git");
+
+        new TransportConfig(sshSessions, Optional.empty(), Optional.empty(), OptionalInt.empty()).configure(transport);
+
+        verify(transport, never()).setTimeout(anyInt());
+        verify(transport, never()).setPreemptiveBasicAuthentication(anyString(), anyString());
+    }
+
+    @Test
+    @DisplayName("close() releases the ssh sessions")
+    void close() throws Exception {
+        doReturn(mock(RemoteSession.class)).when(sshSessionFactory).getSession(any(),
+                any(), any(), anyInt());
+        sshSessions.getSession(new URIish("ssh://git@example.org/repo.git"), null, null, 0);
+
+        testee.close();
+
+        verify(sshSessionFactory).releaseSession(any());
+    }
+
+}